@@ -0,0 +1,41 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main.configure, in nanoseconds per configuration
+ *  line, as done for every '*' line of the input.
+ *  @author Allen Yu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigureBench {
+
+    /** The configuration line measured. */
+    @Param({ "* B BETA III IV I AXLE",
+             "* C GAMMA VIII VI VII QRST JKLM AB CD EF GH" })
+    public String config;
+
+    /** Returns a machine configured by config, as Main does for each
+     *  configuration line. */
+    @Benchmark
+    public Machine configure() {
+        Machine M = new Machine();
+        Main.configure(M, config);
+        return M;
+    }
+}
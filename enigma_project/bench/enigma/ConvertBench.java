@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert on messages of 1 KB, 1 MB, and
+ *  100 MB, in nanoseconds per character.  Each size is a separate
+ *  benchmark so that JMH can divide its times, and the allocations
+ *  reported by the GC profiler, by the number of characters.  The
+ *  machine is reconfigured before every iteration, so that each
+ *  iteration starts from the same rotor positions.
+ *  @author Allen Yu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class ConvertBench {
+
+    /** Characters in the small message. */
+    static final int KB = 1 << 10;
+    /** Characters in the medium message. */
+    static final int MB = 1 << 20;
+    /** Characters in the large message. */
+    static final int HUNDRED_MB = 100 << 20;
+
+    /** Whether the machine converts through a compiled table. */
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    /** Create the messages, which are random letters from a fixed
+     *  seed. */
+    @Setup(Level.Trial)
+    public void messages() {
+        Random random = new Random(SEED);
+        _large = new char[HUNDRED_MB];
+        for (int i = 0; i < _large.length; i += 1) {
+            _large[i] = Rotor.toLetter(random.nextInt(Rotor.ALPHABET_SIZE));
+        }
+        _output = new char[HUNDRED_MB];
+        _small = new String(_large, 0, KB);
+    }
+
+    /** Configure the machine. */
+    @Setup(Level.Iteration)
+    public void machine() {
+        _machine = new Machine();
+        Main.configure(_machine, CONFIG);
+        _machine.setCompiled(compiled);
+    }
+
+    /** Returns the conversion of a 1 KB message, as a String. */
+    @Benchmark
+    @OperationsPerInvocation(KB)
+    public String convertString1K() {
+        return _machine.convert(_small);
+    }
+
+    /** Returns the conversion of a 1 KB message, into an array. */
+    @Benchmark
+    @OperationsPerInvocation(KB)
+    public char[] convert1K() {
+        _machine.convert(_large, 0, KB, _output, 0);
+        return _output;
+    }
+
+    /** Returns the conversion of a 1 MB message, into an array. */
+    @Benchmark
+    @OperationsPerInvocation(MB)
+    public char[] convert1M() {
+        _machine.convert(_large, 0, MB, _output, 0);
+        return _output;
+    }
+
+    /** Returns the conversion of a 100 MB message, into an array. */
+    @Benchmark
+    @OperationsPerInvocation(HUNDRED_MB)
+    public char[] convert100M() {
+        _machine.convert(_large, 0, HUNDRED_MB, _output, 0);
+        return _output;
+    }
+
+    /** The configuration measured. */
+    static final String CONFIG = "* B BETA III IV I AXLE";
+
+    /** Seed of the random messages. */
+    private static final long SEED = 61;
+
+    /** The machine measured. */
+    private Machine _machine;
+    /** The large message; the others are its prefixes. */
+    private char[] _large;
+    /** The small message, as a String. */
+    private String _small;
+    /** Space for converted messages. */
+    private char[] _output;
+}
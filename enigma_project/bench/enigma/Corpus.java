@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/** Generator of large random inputs for enigma.Main: configuration
+ *  lines with random rotors, settings, ring settings, and plugboards,
+ *  each followed by random message lines of letters in both cases and
+ *  blanks.  Most lines are short, but a few are long enough for
+ *  --parallel to split them.  The same seed always gives the same
+ *  corpus.  This class depends on nothing else in the package, so that
+ *  it can be compiled and run on its own.
+ *  @author Allen Yu
+ */
+public final class Corpus {
+
+    /** Not instantiable. */
+    private Corpus() {
+    }
+
+    /** Names of the reflectors. */
+    private static final String[] REFLECTORS = { "B", "C" };
+
+    /** Names of the non-stepping rotors. */
+    private static final String[] FIXED_ROTORS = { "BETA", "GAMMA" };
+
+    /** Names of the stepping rotors. */
+    private static final String[] STEPPING_ROTORS = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+    };
+
+    /** Size of the alphabet. */
+    private static final int ALPHABET_SIZE = 26;
+
+    /** Longest ordinary message line. */
+    private static final int MAX_LINE = 120;
+
+    /** Length of the occasional long message line. */
+    private static final int LONG_LINE = 1 << 17;
+
+    /** One message line in this many is long. */
+    private static final int LONG_LINE_ODDS = 5000;
+
+    /** Most message lines under one configuration. */
+    private static final int MAX_LINES_PER_CONFIG = 200;
+
+    /** Write about SIZE bytes of corpus generated from SEED to OUTPUT.
+     *  Iff CLASSIC, configuration lines have no ring settings or
+     *  plugboards, so that the original engine can process them. */
+    static void generate(long size, long seed, boolean classic,
+                         OutputStream output) throws IOException {
+        Random random = new Random(seed);
+        byte[] line = new byte[LONG_LINE + 1];
+        long written = 0;
+        while (written < size) {
+            byte[] config = configuration(random, classic);
+            output.write(config);
+            written += config.length;
+            int lines = 1 + random.nextInt(MAX_LINES_PER_CONFIG);
+            for (int k = 0; k < lines && written < size; k += 1) {
+                int len = random.nextInt(LONG_LINE_ODDS) == 0 ? LONG_LINE
+                    : random.nextInt(MAX_LINE + 1);
+                for (int i = 0; i < len; i += 1) {
+                    int r = random.nextInt(2 * ALPHABET_SIZE + 8);
+                    if (r < ALPHABET_SIZE) {
+                        line[i] = (byte) ('A' + r);
+                    } else if (r < 2 * ALPHABET_SIZE) {
+                        line[i] = (byte) ('a' + r - ALPHABET_SIZE);
+                    } else {
+                        line[i] = ' ';
+                    }
+                }
+                line[len] = '\n';
+                output.write(line, 0, len + 1);
+                written += len + 1;
+            }
+        }
+        output.flush();
+    }
+
+    /** Returns a random configuration line, with newline, chosen with
+     *  RANDOM, and without ring settings or plugboard iff CLASSIC. */
+    private static byte[] configuration(Random random, boolean classic) {
+        StringBuilder config = new StringBuilder("* ");
+        config.append(REFLECTORS[random.nextInt(REFLECTORS.length)]);
+        config.append(' ');
+        config.append(FIXED_ROTORS[random.nextInt(FIXED_ROTORS.length)]);
+        String[] rotors = STEPPING_ROTORS.clone();
+        for (int i = 0; i < 3; i += 1) {
+            int j = i + random.nextInt(rotors.length - i);
+            String t = rotors[i];
+            rotors[i] = rotors[j];
+            rotors[j] = t;
+            config.append(' ').append(rotors[i]);
+        }
+        config.append(' ').append(letters(random, 4));
+        if (!classic) {
+            if (random.nextBoolean()) {
+                config.append(' ').append(letters(random, 4));
+            }
+            char[] alphabet = new char[ALPHABET_SIZE];
+            for (int i = 0; i < ALPHABET_SIZE; i += 1) {
+                alphabet[i] = (char) ('A' + i);
+            }
+            int pairs = random.nextInt(11);
+            for (int i = 0; i < 2 * pairs; i += 1) {
+                int j = i + random.nextInt(ALPHABET_SIZE - i);
+                char t = alphabet[i];
+                alphabet[i] = alphabet[j];
+                alphabet[j] = t;
+            }
+            for (int i = 0; i < pairs; i += 1) {
+                config.append(' ').append(alphabet[2 * i])
+                    .append(alphabet[2 * i + 1]);
+            }
+        }
+        return config.append('\n').toString().getBytes();
+    }
+
+    /** Returns N random upper-case letters chosen with RANDOM. */
+    private static String letters(Random random, int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(ALPHABET_SIZE));
+        }
+        return new String(result);
+    }
+
+    /** Write a corpus to the standard output.  ARGS are its size in
+     *  megabytes, its seed, and optionally --classic (see generate). */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3
+            || (args.length == 3 && !args[2].equals("--classic"))) {
+            System.err.println("Usage: java enigma.Corpus MEGABYTES SEED "
+                               + "[--classic]");
+            System.exit(1);
+        }
+        generate(Long.parseLong(args[0]) << 20, Long.parseLong(args[1]),
+                 args.length == 3,
+                 new BufferedOutputStream(System.out, 1 << 16));
+    }
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the whole program, from the standard input to the
+ *  standard output, on an input of 1 MB of message lines with a
+ *  configuration line every so often.  The standard input is an
+ *  in-memory copy of the input and the standard output is discarded,
+ *  so that what is measured is Main itself.  Results are per input
+ *  character.
+ *  @author Allen Yu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBench {
+
+    /** Number of input characters. */
+    static final int SIZE = 1 << 20;
+
+    /** Letters in a message line. */
+    static final int LINE_LENGTH = 60;
+
+    /** Message lines between configuration lines. */
+    static final int LINES_PER_CONFIG = 100;
+
+    /** The command-line options measured. */
+    @Param({ "", "--compiled", "--parallel" })
+    public String options;
+
+    /** Create the input from a fixed seed, cutting its last message
+     *  line short to make it exactly SIZE characters, and discard the
+     *  standard output. */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(SEED);
+        StringBuilder input = new StringBuilder(SIZE + SIZE / 10);
+        for (int line = 0; input.length() < SIZE; line += 1) {
+            if (line % LINES_PER_CONFIG == 0
+                && SIZE - input.length() > 2 * LINE_LENGTH) {
+                input.append(CONFIGS[random.nextInt(CONFIGS.length)])
+                    .append('\n');
+            }
+            for (int i = 0; i < LINE_LENGTH; i += 1) {
+                input.append(i % 6 == 5 ? ' '
+                             : Rotor.toLetter(random.nextInt(
+                                   Rotor.ALPHABET_SIZE)));
+            }
+            input.append('\n');
+        }
+        input.setLength(SIZE - 1);
+        input.append('\n');
+        _input = input.toString().getBytes(StandardCharsets.US_ASCII);
+        _args = options.isEmpty() ? new String[0] : options.split(" ");
+        _stdin = System.in;
+        _stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /** Restore the standard streams. */
+    @TearDown(Level.Trial)
+    public void teardown() {
+        System.setIn(_stdin);
+        System.setOut(_stdout);
+    }
+
+    /** Run Main on the input. */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void main() {
+        System.setIn(new ByteArrayInputStream(_input));
+        Main.main(_args);
+    }
+
+    /** Configurations used in the input. */
+    private static final String[] CONFIGS = {
+        "* B BETA III IV I AXLE",
+        "* C GAMMA VIII VI VII QRST",
+        "* B GAMMA I II V MNOP",
+    };
+
+    /** Seed of the random input. */
+    private static final long SEED = 61;
+
+    /** The input. */
+    private byte[] _input;
+    /** Arguments to Main. */
+    private String[] _args;
+    /** The original standard input and output. */
+    private InputStream _stdin;
+    /** The original standard output. */
+    private PrintStream _stdout;
+}
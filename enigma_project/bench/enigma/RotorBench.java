@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of a single rotor's conversions, in nanoseconds per
+ *  letter.  Each invocation converts every letter once at the rotor's
+ *  current setting.
+ *  @author Allen Yu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** The rotor type measured. */
+    @Param({ "I", "VIII" })
+    public String type;
+
+    /** Create the rotor. */
+    @Setup
+    public void setup() {
+        _rotor = new Rotor(type);
+        _rotor.set(Rotor.toIndex('Q'));
+    }
+
+    /** Returns a checksum of the right-to-left conversion of every
+     *  letter. */
+    @Benchmark
+    @OperationsPerInvocation(Rotor.ALPHABET_SIZE)
+    public int encryptForward() {
+        int sum = 0;
+        int setting = _rotor.getSetting();
+        for (int p = 0; p < Rotor.ALPHABET_SIZE; p += 1) {
+            sum += _rotor.encryptForward(p, setting);
+        }
+        return sum;
+    }
+
+    /** Returns a checksum of the left-to-right conversion of every
+     *  letter. */
+    @Benchmark
+    @OperationsPerInvocation(Rotor.ALPHABET_SIZE)
+    public int encryptBackward() {
+        int sum = 0;
+        int setting = _rotor.getSetting();
+        for (int p = 0; p < Rotor.ALPHABET_SIZE; p += 1) {
+            sum += _rotor.encryptBackward(p, setting);
+        }
+        return sum;
+    }
+
+    /** The rotor measured. */
+    private Rotor _rotor;
+}
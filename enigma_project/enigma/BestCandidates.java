@@ -0,0 +1,59 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The K best Candidates offered so far.  A BestCandidates is meant to
+ *  be private to one task: tasks keep their own and merge them when
+ *  they join, so that recording a result never contends for a lock.
+ *  @author Allen Yu
+ */
+final class BestCandidates {
+
+    /** An empty collection of the best K candidates. */
+    BestCandidates(int k) {
+        _k = k;
+        _heap = new PriorityQueue<Candidate>(k + 1);
+    }
+
+    /** Returns true iff a candidate with score SCORE would be kept.
+     *  This is cheap and allocates nothing, so callers use it to avoid
+     *  creating Candidates that would be discarded. */
+    boolean accepts(double score) {
+        return _heap.size() < _k
+            || _k > 0 && score > _heap.peek().getScore();
+    }
+
+    /** Offer C for inclusion. */
+    void add(Candidate c) {
+        if (accepts(c.getScore())) {
+            _heap.add(c);
+            if (_heap.size() > _k) {
+                _heap.poll();
+            }
+        }
+    }
+
+    /** Offer all of the candidates in OTHER. Returns this. */
+    BestCandidates addAll(BestCandidates other) {
+        for (Candidate c : other._heap) {
+            add(c);
+        }
+        return this;
+    }
+
+    /** Returns my candidates, best first. */
+    List<Candidate> sorted() {
+        List<Candidate> result = new ArrayList<Candidate>(_heap);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Maximum number of candidates kept. */
+    private final int _k;
+
+    /** Candidates kept, worst at the head. */
+    private final PriorityQueue<Candidate> _heap;
+}
@@ -0,0 +1,383 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A simulation of the Turing-Welchman bombe.  Given a crib (a guess
+ *  at part of the plaintext) and its position in the ciphertext, the
+ *  bombe builds a menu: a graph on letters with an edge between each
+ *  crib letter and its ciphertext letter, labelled with its position.
+ *  For every rotor order and initial setting it then assumes one
+ *  plugboard partner for the most connected menu letter and follows
+ *  every consequence of that assumption through the menu and the
+ *  diagonal board (if A is plugged to X, X is plugged to A).  When the
+ *  consequences include every possible partner of the test letter, the
+ *  setting is impossible; otherwise the bombe stops and reports it.
+ *  Before that, each setting must pass a cheaper test: every closed
+ *  loop of the menu through the test letter maps that letter's true
+ *  partner to itself, so only the common fixed points of the loops
+ *  need be assumed as partners.  Most settings have none and are
+ *  rejected after a few dozen table lookups.  Rotor orders are tried
+ *  in parallel, and each order is compiled once into a Scrambler.
+ *  @author Allen Yu
+ */
+final class Bombe {
+
+    /** Bitmask of all 26 letters. */
+    private static final int ALL = (1 << Rotor.ALPHABET_SIZE) - 1;
+
+    /** A bombe for the crib CRIB placed at position POSITION of
+     *  CIPHERTEXT, both given as letter indices. */
+    Bombe(byte[] crib, byte[] ciphertext, int position) {
+        if (position < 0 || position + crib.length > ciphertext.length) {
+            throw error("crib does not fit in the ciphertext");
+        }
+        int[] degree = new int[Rotor.ALPHABET_SIZE];
+        for (int i = 0; i < crib.length; i += 1) {
+            if (crib[i] == ciphertext[position + i]) {
+                throw error("crib letter %d is its own encryption", i + 1);
+            }
+            degree[crib[i]] += 1;
+            degree[ciphertext[position + i]] += 1;
+        }
+        _links = new int[Rotor.ALPHABET_SIZE][];
+        _offsets = new int[Rotor.ALPHABET_SIZE][];
+        int test = 0;
+        for (int a = 0; a < Rotor.ALPHABET_SIZE; a += 1) {
+            _links[a] = new int[degree[a]];
+            _offsets[a] = new int[degree[a]];
+            if (degree[a] > degree[test]) {
+                test = a;
+            }
+        }
+        int[] filled = new int[Rotor.ALPHABET_SIZE];
+        for (int i = 0; i < crib.length; i += 1) {
+            int a = crib[i], b = ciphertext[position + i];
+            _links[a][filled[a]] = b;
+            _offsets[a][filled[a]] = i;
+            filled[a] += 1;
+            _links[b][filled[b]] = a;
+            _offsets[b][filled[b]] = i;
+            filled[b] += 1;
+        }
+        _test = test;
+        _position = position;
+        _length = crib.length;
+        _loops = findLoops();
+    }
+
+    /** Returns the crib positions of the edges of closed walks through
+     *  the test letter, one for each edge of the test letter's part of
+     *  the menu that is not in a breadth-first spanning tree rooted at
+     *  the test letter, shortest first. */
+    private int[][] findLoops() {
+        int[][] paths = new int[Rotor.ALPHABET_SIZE][];
+        boolean[] used = new boolean[_length];
+        List<int[]> loops = new ArrayList<int[]>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        paths[_test] = new int[0];
+        queue.add(_test);
+        while (!queue.isEmpty()) {
+            int a = queue.remove();
+            for (int k = 0; k < _links[a].length; k += 1) {
+                int b = _links[a][k], i = _offsets[a][k];
+                if (used[i]) {
+                    continue;
+                }
+                used[i] = true;
+                if (paths[b] == null) {
+                    paths[b] = Arrays.copyOf(paths[a], paths[a].length + 1);
+                    paths[b][paths[a].length] = i;
+                    queue.add(b);
+                } else {
+                    int[] loop = new int[paths[a].length + 1
+                                         + paths[b].length];
+                    System.arraycopy(paths[a], 0, loop, 0, paths[a].length);
+                    loop[paths[a].length] = i;
+                    for (int j = 0; j < paths[b].length; j += 1) {
+                        loop[loop.length - 1 - j] = paths[b][j];
+                    }
+                    loops.add(loop);
+                }
+            }
+        }
+        loops.sort((x, y) -> x.length - y.length);
+        return loops.toArray(new int[loops.size()][]);
+    }
+
+    /** Returns the subset of CANDIDATES (a bitmask of letters) that
+     *  LOOP maps to themselves when its edges are converted by
+     *  SCRAMBLER with REFLECTION in STATES. */
+    private static int fixedPoints(int[] loop, Scrambler scrambler,
+                                   int[] reflection, int[] states,
+                                   int candidates) {
+        int result = 0;
+        for (int rest = candidates; rest != 0; rest &= rest - 1) {
+            int x = Integer.numberOfTrailingZeros(rest);
+            int y = x;
+            for (int i : loop) {
+                y = scrambler.convert(states[i], reflection, y);
+            }
+            if (y == x) {
+                result |= 1 << x;
+            }
+        }
+        return result;
+    }
+
+    /** A setting at which the bombe stopped. */
+    static final class Stop {
+
+        /** A stop at the configuration line CONFIGURATION with test
+         *  letter TEST plugged to STECKER, or to an undetermined letter
+         *  if STECKER is negative. */
+        Stop(String configuration, int test, int stecker) {
+            _configuration = configuration;
+            _test = test;
+            _stecker = stecker;
+        }
+
+        /** Returns the configuration line of this stop. */
+        String configuration() {
+            return _configuration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %c=%c", _configuration,
+                                 Rotor.toLetter(_test),
+                                 _stecker < 0 ? '?'
+                                 : Rotor.toLetter(_stecker));
+        }
+
+        /** The configuration line. */
+        private final String _configuration;
+        /** The test letter and its deduced plugboard partner. */
+        private final int _test, _stecker;
+    }
+
+    /** Run the bombe on every rotor order and setting in POOL, and
+     *  return its stops. */
+    List<Stop> run(ForkJoinPool pool) {
+        List<String[]> orders = KeySearch.steppingOrders();
+        return pool.invoke(new OrderTask(orders, 0, orders.size()));
+    }
+
+    /** Returns the stops for stepping rotors ORDER, compiled into
+     *  SCRAMBLER, with reflector REFLECTOR and non-stepping rotor
+     *  FIXED. */
+    List<Stop> search(String[] order, Scrambler scrambler,
+                      String reflector, String fixed) {
+        List<Stop> stops = new ArrayList<Stop>();
+        Odometer odometer = scrambler.odometer();
+        Rotor reflectorRotor = new Reflector(reflector);
+        Rotor fixedRotor = new FixedRotor(fixed);
+        String[] rotors = { reflector, fixed, order[0], order[1], order[2] };
+        int[] states = new int[_length];
+        int[] live = new int[Rotor.ALPHABET_SIZE];
+        int[] stack = new int[Rotor.ALPHABET_SIZE * Rotor.ALPHABET_SIZE];
+        for (int f = 0; f < Rotor.ALPHABET_SIZE; f += 1) {
+            fixedRotor.set(f);
+            int[] reflection = Scrambler.reflection(reflectorRotor,
+                                                    fixedRotor);
+            for (int start = 0; start < SubstitutionTable.STATES;
+                 start += 1) {
+                int s = odometer.advance(start, _position);
+                for (int i = 0; i < _length; i += 1) {
+                    s = odometer.next(s);
+                    states[i] = s;
+                }
+                int stecker = test(scrambler, reflection, states, live,
+                                   stack);
+                if (stecker != NO_STOP) {
+                    String config = Candidate.configuration(
+                        rotors, KeySearch.setting(f, start));
+                    stops.add(new Stop(config, _test, stecker));
+                }
+            }
+        }
+        return stops;
+    }
+
+    /** Result of test for a setting at which the bombe does not
+     *  stop. */
+    private static final int NO_STOP = -2;
+
+    /** Result of test for a stop at which the partner of the test
+     *  letter is not determined. */
+    private static final int UNKNOWN = -1;
+
+    /** Test the setting in which the crib letters are converted by
+     *  SCRAMBLER with REFLECTION in STATES, using LIVE and STACK as
+     *  scratch space.  Returns NO_STOP if the setting is impossible,
+     *  and otherwise the deduced partner of the test letter, or
+     *  UNKNOWN. */
+    private int test(Scrambler scrambler, int[] reflection, int[] states,
+                     int[] live, int[] stack) {
+        if (_loops.length == 0) {
+            int lit = propagate(0, scrambler, reflection, states, live,
+                                stack);
+            int count = Integer.bitCount(lit);
+            if (count == Rotor.ALPHABET_SIZE) {
+                return NO_STOP;
+            } else if (count == 1) {
+                return 0;
+            } else if (count == Rotor.ALPHABET_SIZE - 1) {
+                return Integer.numberOfTrailingZeros(~lit & ALL);
+            } else {
+                return UNKNOWN;
+            }
+        }
+        int candidates = ALL;
+        for (int[] loop : _loops) {
+            candidates = fixedPoints(loop, scrambler, reflection, states,
+                                     candidates);
+            if (candidates == 0) {
+                return NO_STOP;
+            }
+        }
+        for (int rest = candidates; rest != 0; rest &= rest - 1) {
+            int x = Integer.numberOfTrailingZeros(rest);
+            if (propagate(x, scrambler, reflection, states, live, stack)
+                != ALL) {
+                return x;
+            }
+        }
+        return NO_STOP;
+    }
+
+    /** Assume that the test letter is plugged to HYPOTHESIS and follow
+     *  the consequences through the menu, whose edges are converted by
+     *  SCRAMBLER with REFLECTION in the states STATES (one per crib
+     *  letter), and through the diagonal board.  LIVE and STACK are
+     *  scratch space; each letter pair is pushed on STACK at most
+     *  once.  Returns the set of partners of the test letter implied,
+     *  as a bitmask; stops early once it is ALL. */
+    private int propagate(int hypothesis, Scrambler scrambler, int[] reflection,
+                          int[] states, int[] live, int[] stack) {
+        Arrays.fill(live, 0);
+        live[_test] = 1 << hypothesis;
+        int sp = 0;
+        stack[sp++] = _test * Rotor.ALPHABET_SIZE + hypothesis;
+        while (sp > 0 && live[_test] != ALL) {
+            int top = stack[--sp];
+            int a = top / Rotor.ALPHABET_SIZE, x = top % Rotor.ALPHABET_SIZE;
+            if ((live[x] & (1 << a)) == 0) {
+                live[x] |= 1 << a;
+                stack[sp++] = x * Rotor.ALPHABET_SIZE + a;
+            }
+            int[] links = _links[a], offsets = _offsets[a];
+            for (int k = 0; k < links.length; k += 1) {
+                int y = scrambler.convert(states[offsets[k]], reflection, x);
+                int b = links[k];
+                if ((live[b] & (1 << y)) == 0) {
+                    live[b] |= 1 << y;
+                    stack[sp++] = b * Rotor.ALPHABET_SIZE + y;
+                }
+            }
+        }
+        return live[_test];
+    }
+
+    /** Runs the bombe on a range of stepping-rotor orders. */
+    private class OrderTask extends RecursiveTask<List<Stop>> {
+
+        /** A task for ORDERS[LO .. HI-1]. */
+        OrderTask(List<String[]> orders, int lo, int hi) {
+            _orders = orders;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                OrderTask left = new OrderTask(_orders, _lo, mid);
+                left.fork();
+                List<Stop> result =
+                    new OrderTask(_orders, mid, _hi).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            String[] order = _orders.get(_lo);
+            Scrambler scrambler = new Scrambler(new Rotor(order[0]),
+                                                new Rotor(order[1]),
+                                                new Rotor(order[2]));
+            List<Stop> result = new ArrayList<Stop>();
+            for (String reflector : KeySearch.REFLECTORS) {
+                for (String fixed : KeySearch.FIXED_ROTORS) {
+                    result.addAll(search(order, scrambler, reflector, fixed));
+                }
+            }
+            return result;
+        }
+
+        /** All stepping-rotor orders. */
+        private final List<String[]> _orders;
+        /** The range of _orders I run. */
+        private final int _lo, _hi;
+    }
+
+    /** Run the bombe on the ciphertext on the standard input, with
+     *  ARGS giving the crib and its position (counting from 0) in the
+     *  ciphertext, optionally followed by --threads N.  Prints each
+     *  stop as a configuration line and the deduced plugboard partner
+     *  of the test letter. */
+    public static void main(String[] args) {
+        try {
+            if (args.length != 2 && args.length != 4
+                || args.length == 4 && !args[2].equals("--threads")) {
+                throw error("usage: java enigma.Bombe CRIB POSITION "
+                            + "[--threads N] < CIPHERTEXT");
+            }
+            int threads = args.length == 4
+                ? KeySearch.positiveOption(args[2], args[3])
+                : Runtime.getRuntime().availableProcessors();
+            byte[] crib = KeySearch.readLetters(new StringReader(args[0]));
+            byte[] ciphertext = KeySearch.readLetters(
+                new BufferedReader(new InputStreamReader(System.in)));
+            Bombe bombe = new Bombe(crib, ciphertext,
+                                    Integer.parseInt(args[1]));
+            for (Stop stop : bombe.run(new ForkJoinPool(threads))) {
+                System.out.println(stop);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** _links[A] lists the letters joined to letter A in the menu. */
+    private final int[][] _links;
+
+    /** _offsets[A][K] is the crib position of the edge from A to
+     *  _links[A][K]. */
+    private final int[][] _offsets;
+
+    /** The test letter: the most connected letter of the menu. */
+    private final int _test;
+
+    /** Closed walks through the test letter, as lists of the crib
+     *  positions of their edges. */
+    private final int[][] _loops;
+
+    /** Position of the crib in the ciphertext. */
+    private final int _position;
+
+    /** Length of the crib. */
+    private final int _length;
+}
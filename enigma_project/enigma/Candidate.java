@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** One key found by a search, with its score.  Candidates are ordered
+ *  by score, and print as a configuration line that Main accepts.
+ *  @author Allen Yu
+ */
+final class Candidate implements Comparable<Candidate> {
+
+    /** A candidate with the given SCORE for the configuration whose
+     *  rotors are named ROTORS, from the reflector rightwards, and
+     *  whose initial setting is SETTING (four letters, as for
+     *  Machine.setRotors). */
+    Candidate(double score, String[] rotors, String setting) {
+        _score = score;
+        _rotors = rotors.clone();
+        _setting = setting;
+    }
+
+    /** Returns the candidate printed as LINE by toString. */
+    static Candidate parse(String line) {
+        String[] fields = line.trim().split(" +");
+        if (fields.length != NUM_FIELDS || !fields[1].equals("*")) {
+            throw EnigmaException.error("bad candidate: %s", line);
+        }
+        try {
+            return new Candidate(Double.parseDouble(fields[0]),
+                                 Arrays.copyOfRange(fields, 2, 7),
+                                 fields[7]);
+        } catch (NumberFormatException excp) {
+            throw EnigmaException.error("bad candidate score: %s", line);
+        }
+    }
+
+    /** Returns my score. */
+    double getScore() {
+        return _score;
+    }
+
+    /** Returns my initial rotor setting, as for Machine.setRotors. */
+    String getSetting() {
+        return _setting;
+    }
+
+    /** Returns my configuration line. */
+    String configuration() {
+        return configuration(_rotors, _setting);
+    }
+
+    /** Returns the configuration line, without a plugboard, for the
+     *  rotors named ROTORS, from the reflector rightwards, at the
+     *  initial setting SETTING. */
+    static String configuration(String[] rotors, String setting) {
+        StringBuilder result = new StringBuilder("*");
+        for (String rotor : rotors) {
+            result.append(' ').append(rotor);
+        }
+        return result.append(' ').append(setting).toString();
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+        return Double.compare(_score, other._score);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.6f %s", _score, configuration());
+    }
+
+    /** Number of blank-separated fields printed by toString. */
+    private static final int NUM_FIELDS = 8;
+
+    /** My score. */
+    private final double _score;
+
+    /** Names of my rotors, from the reflector rightwards. */
+    private final String[] _rotors;
+
+    /** My initial setting. */
+    private final String _setting;
+}
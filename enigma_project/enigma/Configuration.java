@@ -0,0 +1,188 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.error;
+
+/** A parsed and validated configuration line: the wirings (with ring
+ *  settings) of a Machine's five rotors, the initial settings of the
+ *  four that have settings, and a plugboard.  Configurations are
+ *  immutable.  Parsing looks rotors up in the Wiring registry and
+ *  checks their roles with Wiring.Kind, and recently parsed lines are
+ *  cached, so that switching back to a configuration seen before costs
+ *  only a hash lookup and resetting a Machine's rotor settings.
+ *  @author Allen Yu
+ */
+final class Configuration {
+
+    /** Maximum number of configurations retained by parse. */
+    static final int CACHE_CAPACITY = 256;
+
+    /** Number of rotors in a Machine. */
+    static final int NUM_ROTORS = 5;
+
+    /** A configuration of rotors with WIRINGS, from left to right,
+     *  initial settings SETTINGS of all but the leftmost, and
+     *  PLUGBOARD. */
+    private Configuration(Wiring[] wirings, int[] settings,
+                          Plugboard plugboard) {
+        _wirings = wirings;
+        _settings = settings;
+        _plugboard = plugboard;
+    }
+
+    /** Returns the configuration given by the configuration line LINE,
+     *  which has the format described at Main.configure.  It is an
+     *  error if LINE is malformed. */
+    static Configuration parse(String line) {
+        synchronized (CACHE) {
+            Configuration result = CACHE.get(line);
+            if (result != null) {
+                Stats.CONFIGURATION_HITS.increment();
+                record(line, true);
+                return result;
+            }
+        }
+        Configuration result = parseUncached(line);
+        synchronized (CACHE) {
+            CACHE.put(line, result);
+        }
+        Stats.CONFIGURATION_MISSES.increment();
+        record(line, false);
+        return result;
+    }
+
+    /** Record the parsing of LINE, which was CACHED or not, as a
+     *  Stats.ConfigureEvent if flight recording has enabled them. */
+    private static void record(String line, boolean cached) {
+        Stats.ConfigureEvent event = new Stats.ConfigureEvent();
+        if (event.isEnabled()) {
+            event.configuration = line;
+            event.cached = cached;
+            event.commit();
+        }
+    }
+
+    /** Returns the configuration given by LINE, as for parse, without
+     *  consulting the cache. */
+    private static Configuration parseUncached(String line) {
+        if (line.length() < 2) {
+            throw error("empty configuration");
+        }
+        String[] fields = line.substring(2).split(" ");
+        if (fields.length < NUM_ROTORS + 1) {
+            throw error("wrong number of configuration fields");
+        }
+        int[] settings = letters(fields[NUM_ROTORS], "rotor setting");
+        int firstPair = NUM_ROTORS + 1;
+        int[] rings = new int[NUM_ROTORS - 1];
+        if (fields.length > firstPair
+            && fields[firstPair].length() == rings.length) {
+            rings = letters(fields[firstPair], "ring setting");
+            firstPair += 1;
+        }
+        Wiring[] wirings = new Wiring[NUM_ROTORS];
+        for (int i = 0; i < NUM_ROTORS; i += 1) {
+            Wiring wiring = rotorWiring(fields, i);
+            wirings[i] = i == 0 ? wiring : wiring.withRing(rings[i - 1]);
+        }
+        return new Configuration(wirings, settings, Plugboard.parse(
+            Arrays.copyOfRange(fields, firstPair, fields.length)));
+    }
+
+    /** Returns the wiring, without a ring setting, of the rotor named
+     *  NAMES[I], which is rotor I of the rotors named NAMES[0 .. I],
+     *  numbered from 0 at the left.  It is an error if there is no such
+     *  rotor, if it repeats an earlier one, or if it cannot be used in
+     *  position I. */
+    static Wiring rotorWiring(String[] names, int i) {
+        Wiring wiring = Wiring.forName(names[i]);
+        if (wiring == null) {
+            throw error("unknown rotor: %s", names[i]);
+        }
+        for (int j = 0; j < i; j += 1) {
+            if (Wiring.forName(names[j]) == wiring) {
+                throw error("repeated rotor: %s", names[i]);
+            }
+        }
+        if (wiring.getKind() != ROLES[i]) {
+            switch (i) {
+            case 0:
+                throw error("first rotor must be a reflector");
+            case 1:
+                throw error("second rotor must be BETA or GAMMA");
+            default:
+                throw error("rotor %d cannot be %s", i + 1, names[i]);
+            }
+        }
+        return wiring;
+    }
+
+    /** Returns the letter indices of the four upper-case letters in
+     *  FIELD, which is a WHAT.  It is an error for FIELD to be anything
+     *  else. */
+    private static int[] letters(String field, String what) {
+        if (field.length() != NUM_ROTORS - 1) {
+            throw error("%s must have four letters", what);
+        }
+        int[] result = new int[field.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = Rotor.toIndex(field.charAt(i));
+            if (result[i] < 0 || result[i] >= Rotor.ALPHABET_SIZE) {
+                throw error("bad %s: %s", what, field);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the wiring of rotor I, numbered from 0 at the left. */
+    Wiring getWiring(int i) {
+        return _wirings[i];
+    }
+
+    /** Returns the initial setting of rotor I, numbered from 0 at the
+     *  left, which must be at least 1. */
+    int getSetting(int i) {
+        return _settings[i - 1];
+    }
+
+    /** Returns my plugboard. */
+    Plugboard getPlugboard() {
+        return _plugboard;
+    }
+
+    /** Discard all cached configurations. */
+    static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /** The kind of rotor required at each position. */
+    private static final Wiring.Kind[] ROLES = {
+        Wiring.Kind.REFLECTOR, Wiring.Kind.FIXED, Wiring.Kind.STEPPING,
+        Wiring.Kind.STEPPING, Wiring.Kind.STEPPING
+    };
+
+    /** Recently parsed configurations, by line, in order of last use. */
+    private static final Map<String, Configuration> CACHE =
+        new LinkedHashMap<String, Configuration>(CACHE_CAPACITY, 0.75f,
+                                                 true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Configuration> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+
+    /** The wirings of my rotors, from left to right. */
+    private final Wiring[] _wirings;
+
+    /** The initial settings of all but my leftmost rotor. */
+    private final int[] _settings;
+
+    /** My plugboard. */
+    private final Plugboard _plugboard;
+}
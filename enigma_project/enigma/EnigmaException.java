@@ -0,0 +1,27 @@
+package enigma;
+
+/** An unchecked exception that represents any kind of user error in
+ *  the input to the Enigma simulator.
+ *  @author Allen Yu
+ */
+class EnigmaException extends RuntimeException {
+
+    /** An EnigmaException with no message. */
+    EnigmaException() {
+    }
+
+    /** An EnigmaException for which .getMessage() is MSG. */
+    EnigmaException(String msg) {
+        super(msg);
+    }
+
+    /** Returns an exception containing an error message formatted
+     *  according to FORMAT and ARGS, as for printf or String.format.
+     *  Typically, one uses this by throwing the result in a context
+     *  where there is a 'try' block that handles it by reporting the
+     *  message. */
+    static EnigmaException error(String format, Object... args) {
+        return new EnigmaException(String.format(format, args));
+    }
+
+}
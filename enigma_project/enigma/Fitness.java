@@ -0,0 +1,21 @@
+package enigma;
+
+/** A measure of how much a candidate decryption looks like plaintext.
+ *  Larger scores are better.  Implementations may keep scratch state,
+ *  so each thread should use its own Fitness unless an implementation
+ *  says otherwise.
+ *  @author Allen Yu
+ */
+interface Fitness {
+
+    /** Returns the score of TEXT[0 .. LEN-1], a sequence of letter
+     *  indices in the range 0..25. */
+    default double score(byte[] text, int len) {
+        return score(text, 0, len);
+    }
+
+    /** Returns the score of TEXT[START .. START+LEN-1], a sequence of
+     *  letter indices in the range 0..25. */
+    double score(byte[] text, int start, int len);
+
+}
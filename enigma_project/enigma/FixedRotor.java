@@ -11,13 +11,19 @@ class FixedRotor extends Rotor {
         super(p);
     }
 
+    /** Constructs a FixedRotor with the given WIRING, set to the 'A'
+     *  position. */
+    FixedRotor(Wiring wiring) {
+        super(wiring);
+    }
+
     @Override
     boolean advances() {
         return false;
     }
 
     @Override
-    boolean atNotch() {
+    boolean atNotch(int setting) {
         return false;
     }
 
@@ -0,0 +1,31 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The index of coincidence of a text: the probability that two
+ *  letters drawn from different positions of it are equal.  It is
+ *  about 0.0385 for uniformly random text and about 0.066 for English
+ *  or German.  Not thread-safe.
+ *  @author Allen Yu
+ */
+final class IndexOfCoincidence implements Fitness {
+
+    @Override
+    public double score(byte[] text, int start, int len) {
+        if (len < 2) {
+            return 0.0;
+        }
+        Arrays.fill(_counts, 0);
+        for (int i = start; i < start + len; i += 1) {
+            _counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int n : _counts) {
+            sum += n * (n - 1);
+        }
+        return (double) sum / ((long) len * (len - 1));
+    }
+
+    /** Letter counts of the text being scored. */
+    private final int[] _counts = new int[Rotor.ALPHABET_SIZE];
+}
@@ -0,0 +1,131 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A batch of candidate keys that share their stepping rotors, tried
+ *  together on one message.  The keys of a batch are every pairing of
+ *  a set of starting states of the stepping rotors (added with add)
+ *  with a set of reflections, the combined effect of a reflector and
+ *  non-stepping rotor in some setting (registered with
+ *  addReflection).  All keys with the same starting state go through
+ *  the same stepping-rotor states, so each letter of a message takes
+ *  one stepping and one right-to-left pass per starting state, shared
+ *  by all its reflections, and then one left-to-right pass per key in
+ *  the same row of the compiled tables.  The keys' states are kept in
+ *  parallel primitive arrays and converted one letter at a time, in
+ *  loops with no objects or calls.  Key J pairs starting state
+ *  number J / R with reflection number J % R, where R is the number
+ *  of reflections, and its conversion of a message of length N is
+ *  output()[J * N .. J * N + N - 1].  Not thread-safe.
+ *  @author Allen Yu
+ */
+final class KeyBatch {
+
+    /** An empty batch of at most CAPACITY starting states for the
+     *  stepping rotors compiled into SCRAMBLER. */
+    KeyBatch(Scrambler scrambler, int capacity) {
+        _scrambler = scrambler;
+        _starts = new int[capacity];
+        _states = new int[capacity];
+        _table = new int[0];
+        _output = new byte[0];
+    }
+
+    /** Register REFLECTION (as returned by Scrambler.reflection) and
+     *  return its number. */
+    int addReflection(int[] reflection) {
+        int n = reflections();
+        _table = Arrays.copyOf(_table, _table.length + Rotor.ALPHABET_SIZE);
+        System.arraycopy(reflection, 0, _table, n * Rotor.ALPHABET_SIZE,
+                         Rotor.ALPHABET_SIZE);
+        return n;
+    }
+
+    /** Returns the number of registered reflections. */
+    int reflections() {
+        return _table.length / Rotor.ALPHABET_SIZE;
+    }
+
+    /** Add the keys whose stepping rotors start in state START. */
+    void add(int start) {
+        if (isFull()) {
+            throw new IllegalStateException("batch is full");
+        }
+        _starts[_numStarts] = start;
+        _numStarts += 1;
+    }
+
+    /** Remove all starting states, but not the registered
+     *  reflections. */
+    void clear() {
+        _numStarts = 0;
+    }
+
+    /** Returns the number of keys in this batch. */
+    int size() {
+        return _numStarts * reflections();
+    }
+
+    /** Returns true iff no more starting states may be added. */
+    boolean isFull() {
+        return _numStarts == _starts.length;
+    }
+
+    /** Returns the reflection number of key J. */
+    int reflection(int j) {
+        return j % reflections();
+    }
+
+    /** Returns the starting stepping-rotor state of key J. */
+    int start(int j) {
+        return _starts[j / reflections()];
+    }
+
+    /** Convert INPUT[0 .. LEN-1], letter indices 0..25, with every key,
+     *  each starting from its own starting state.  Afterwards, key J's
+     *  output is at J * LEN in output(). */
+    void convert(byte[] input, int len) {
+        int n = _numStarts, r = reflections();
+        if (_output.length < n * r * len) {
+            _output = new byte[_starts.length * r * len];
+        }
+        int[] states = _states;
+        int[] table = _table;
+        int[] next = _scrambler.odometer().nextTable();
+        byte[] forward = _scrambler.forwardByLetter(),
+            backward = _scrambler.backwardTable();
+        byte[] output = _output;
+        System.arraycopy(_starts, 0, states, 0, n);
+        for (int i = 0; i < len; i += 1) {
+            int p = input[i] * SubstitutionTable.STATES;
+            for (int j = 0, k = i; j < n; j += 1) {
+                int s = next[states[j]];
+                states[j] = s;
+                int row = s * Rotor.ALPHABET_SIZE;
+                int x = forward[p + s];
+                for (int t = 0; t < table.length;
+                     t += Rotor.ALPHABET_SIZE, k += len) {
+                    output[k] = backward[row + table[t + x]];
+                }
+            }
+        }
+    }
+
+    /** Returns the outputs of the last convert. */
+    byte[] output() {
+        return _output;
+    }
+
+    /** The compiled stepping rotors. */
+    private final Scrambler _scrambler;
+    /** The starting states of the keys. */
+    private final int[] _starts;
+    /** The current states of the keys during convert. */
+    private final int[] _states;
+    /** The registered reflections, one row of 26 for each. */
+    private int[] _table;
+    /** The outputs of the last convert, key by key. */
+    private byte[] _output;
+    /** Number of starting states in this batch. */
+    private int _numStarts;
+}
@@ -0,0 +1,347 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.error;
+
+/** A ciphertext-only search for the Enigma key of a message.  Every
+ *  reflector, non-stepping rotor, order of three stepping rotors, and
+ *  initial setting of all four rotors is tried, and the decryptions
+ *  are ranked by a Fitness (by default, the index of coincidence).
+ *  The key space is divided among the tasks of a fork/join pool by
+ *  stepping-rotor order; the Scrambler compiled for an order is shared
+ *  by the tasks that try it with each reflector and non-stepping rotor,
+ *  each of which tries its keys a KeyBatch at a time.
+ *  Each task keeps its own BestCandidates, which are merged as tasks
+ *  join.
+ *  @author Allen Yu
+ */
+final class KeySearch {
+
+    /** Names of the reflectors. */
+    static final String[] REFLECTORS = { "B", "C" };
+
+    /** Names of the non-stepping rotors. */
+    static final String[] FIXED_ROTORS = { "BETA", "GAMMA" };
+
+    /** Names of the stepping rotors. */
+    static final String[] STEPPING_ROTORS = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+    };
+
+    /** Number of keys tried for each stepping-rotor order. */
+    static final long KEYS_PER_ORDER = (long) REFLECTORS.length
+        * FIXED_ROTORS.length * Rotor.ALPHABET_SIZE
+        * SubstitutionTable.STATES;
+
+    /** Number of starting states tried together in a KeyBatch.  With
+     *  the 26 settings of the non-stepping rotor, a batch holds 4160
+     *  keys. */
+    static final int BATCH_SIZE = 160;
+
+    /** A search of CIPHERTEXT (letter indices 0..25) for its K best
+     *  keys, scoring each decryption with a Fitness from FITNESS, which
+     *  supplies one Fitness for each task. */
+    KeySearch(byte[] ciphertext, int k, Supplier<Fitness> fitness) {
+        _ciphertext = ciphertext;
+        _k = k;
+        _fitness = fitness;
+    }
+
+    /** Returns the names of all orders of three distinct stepping
+     *  rotors, from left to right. */
+    static List<String[]> steppingOrders() {
+        List<String[]> result = new ArrayList<String[]>();
+        for (String left : STEPPING_ROTORS) {
+            for (String middle : STEPPING_ROTORS) {
+                for (String right : STEPPING_ROTORS) {
+                    if (!left.equals(middle) && !left.equals(right)
+                        && !middle.equals(right)) {
+                        result.add(new String[] { left, middle, right });
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Search the whole key space in POOL and return the best keys,
+     *  best first. */
+    List<Candidate> run(ForkJoinPool pool) {
+        return pool.invoke(new OrderTask(0, _orders.size())).sorted();
+    }
+
+    /** Returns the number of keys tried so far. */
+    long tested() {
+        return _tested.sum();
+    }
+
+    /** Returns the total number of keys to try. */
+    long total() {
+        return _orders.size() * KEYS_PER_ORDER;
+    }
+
+    /** Try every key whose stepping rotors are ORDER and whose
+     *  reflector and non-stepping rotor are REFLECTOR and FIXED, using
+     *  SCRAMBLER compiled for ORDER, and return the best. */
+    BestCandidates search(String[] order, Scrambler scrambler,
+                          String reflector, String fixed) {
+        BestCandidates best = new BestCandidates(_k);
+        Fitness fitness = _fitness.get();
+        KeyBatch batch = new KeyBatch(scrambler, BATCH_SIZE);
+        Rotor reflectorRotor = new Reflector(reflector);
+        Rotor fixedRotor = new FixedRotor(fixed);
+        String[] rotors = { reflector, fixed, order[0], order[1], order[2] };
+        for (int f = 0; f < Rotor.ALPHABET_SIZE; f += 1) {
+            fixedRotor.set(f);
+            batch.addReflection(Scrambler.reflection(reflectorRotor,
+                                                     fixedRotor));
+        }
+        for (int start = 0; start < SubstitutionTable.STATES; start += 1) {
+            batch.add(start);
+            if (batch.isFull()) {
+                score(batch, fitness, rotors, best);
+            }
+        }
+        score(batch, fitness, rotors, best);
+        return best;
+    }
+
+    /** Decrypt my message with the keys in BATCH, whose rotors are
+     *  named by ROTORS and whose reflection numbers are the settings of
+     *  their non-stepping rotors, and add the keys scored best by
+     *  FITNESS to BEST.  Then empty BATCH. */
+    private void score(KeyBatch batch, Fitness fitness, String[] rotors,
+                       BestCandidates best) {
+        int len = _ciphertext.length;
+        batch.convert(_ciphertext, len);
+        byte[] text = batch.output();
+        for (int j = 0; j < batch.size(); j += 1) {
+            double score = fitness.score(text, j * len, len);
+            if (best.accepts(score)) {
+                best.add(new Candidate(score, rotors,
+                                       setting(batch.reflection(j),
+                                               batch.start(j))));
+            }
+        }
+        _tested.add(batch.size());
+        batch.clear();
+    }
+
+    /** Returns the four-letter setting string for a machine whose
+     *  non-stepping rotor is at F and whose stepping rotors are in
+     *  state S. */
+    static String setting(int f, int s) {
+        return new String(new char[] {
+            Rotor.toLetter(f),
+            Rotor.toLetter(SubstitutionTable.leftSetting(s)),
+            Rotor.toLetter(SubstitutionTable.middleSetting(s)),
+            Rotor.toLetter(SubstitutionTable.rightSetting(s))
+        });
+    }
+
+    /** Searches a range of stepping-rotor orders. */
+    private class OrderTask extends RecursiveTask<BestCandidates> {
+
+        /** A task searching orders LO .. HI-1 of _orders. */
+        OrderTask(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected BestCandidates compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                OrderTask left = new OrderTask(_lo, mid);
+                left.fork();
+                BestCandidates result = new OrderTask(mid, _hi).compute();
+                return result.addAll(left.join());
+            }
+            String[] order = _orders.get(_lo);
+            Scrambler scrambler = new Scrambler(new Rotor(order[0]),
+                                                new Rotor(order[1]),
+                                                new Rotor(order[2]));
+            List<ReflectorTask> tasks = new ArrayList<ReflectorTask>();
+            for (String reflector : REFLECTORS) {
+                for (String fixed : FIXED_ROTORS) {
+                    tasks.add(new ReflectorTask(order, scrambler,
+                                                reflector, fixed));
+                }
+            }
+            BestCandidates result = new BestCandidates(_k);
+            for (ReflectorTask task : invokeAll(tasks)) {
+                result.addAll(task.join());
+            }
+            return result;
+        }
+
+        /** The range of orders I search. */
+        private final int _lo, _hi;
+    }
+
+    /** Searches the keys of one stepping-rotor order with one
+     *  reflector and non-stepping rotor. */
+    private class ReflectorTask extends RecursiveTask<BestCandidates> {
+
+        /** A task searching stepping-rotor order ORDER, compiled into
+         *  SCRAMBLER, with REFLECTOR and FIXED. */
+        ReflectorTask(String[] order, Scrambler scrambler,
+                      String reflector, String fixed) {
+            _order = order;
+            _scrambler = scrambler;
+            _reflector = reflector;
+            _fixed = fixed;
+        }
+
+        @Override
+        protected BestCandidates compute() {
+            return search(_order, _scrambler, _reflector, _fixed);
+        }
+
+        /** The stepping rotors I try. */
+        private final String[] _order;
+        /** The compiled form of _order. */
+        private final Scrambler _scrambler;
+        /** The reflector and non-stepping rotor I try. */
+        private final String _reflector, _fixed;
+    }
+
+    /** Returns the letters of the text read from INPUT as indices
+     *  0..25, ignoring case and white space.  It is an error for INPUT
+     *  to contain anything else. */
+    static byte[] readLetters(Reader input) throws IOException {
+        StringBuilder letters = new StringBuilder();
+        int c;
+        while ((c = input.read()) >= 0) {
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int p = Rotor.toIndex(Character.toUpperCase((char) c));
+            if (p < 0 || p >= Rotor.ALPHABET_SIZE) {
+                throw error("not a letter: '%c'", (char) c);
+            }
+            letters.append((char) p);
+        }
+        byte[] result = new byte[letters.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) letters.charAt(i);
+        }
+        return result;
+    }
+
+    /** Returns the value of the command-line option NAME, given as
+     *  VALUE, which must denote a positive integer. */
+    static int positiveOption(String name, String value) {
+        int n = Integer.parseInt(value);
+        if (n < 1) {
+            throw error("%s must be positive: %d", name, n);
+        }
+        return n;
+    }
+
+    /** Seconds between progress reports. */
+    private static final int REPORT_INTERVAL = 5;
+
+    /** Search for the key of the ciphertext on the standard input and
+     *  print the best keys found, best first, one per line as a score
+     *  and a configuration line.  ARGS may contain --top K (default 10),
+     *  --threads N (default: all processors), and --ngrams FILE, which
+     *  scores keys with the n-gram counts in FILE (see NgramScorer.load)
+     *  instead of the index of coincidence.  Progress and throughput
+     *  are reported on the standard error. */
+    public static void main(String[] args) {
+        int k = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Supplier<Fitness> fitness = IndexOfCoincidence::new;
+        try {
+            for (int i = 0; i < args.length; i += 1) {
+                if (args[i].equals("--top") && i + 1 < args.length) {
+                    k = positiveOption(args[i], args[i += 1]);
+                } else if (args[i].equals("--threads")
+                           && i + 1 < args.length) {
+                    threads = positiveOption(args[i], args[i += 1]);
+                } else if (args[i].equals("--ngrams")
+                           && i + 1 < args.length) {
+                    NgramScorer scorer;
+                    try (Reader table = new FileReader(args[i += 1])) {
+                        scorer = NgramScorer.load(table);
+                    }
+                    fitness = () -> scorer;
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            }
+            byte[] ciphertext = readLetters(
+                new BufferedReader(new InputStreamReader(System.in)));
+            KeySearch search = new KeySearch(ciphertext, k, fitness);
+            for (Candidate c : report(search, new ForkJoinPool(threads))) {
+                System.out.println(c);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Run SEARCH in POOL, reporting its progress on the standard error
+     *  every few seconds, and return its result. */
+    static List<Candidate> report(KeySearch search, ForkJoinPool pool) {
+        final long start = System.nanoTime();
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(REPORT_INTERVAL * 1000L);
+                    progress(search, start);
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        });
+        reporter.setDaemon(true);
+        reporter.start();
+        List<Candidate> result = search.run(pool);
+        reporter.interrupt();
+        progress(search, start);
+        return result;
+    }
+
+    /** Print the progress of SEARCH, begun at time START (as given by
+     *  System.nanoTime), on the standard error. */
+    private static void progress(KeySearch search, long start) {
+        long tested = search.tested();
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.err.printf("%d of %d keys (%.1f%%), %.0f keys/s%n",
+                          tested, search.total(),
+                          100.0 * tested / search.total(),
+                          tested / Math.max(seconds, 1e-9));
+    }
+
+    /** The message, as letter indices. */
+    private final byte[] _ciphertext;
+
+    /** Number of keys to report. */
+    private final int _k;
+
+    /** Supplies each task's Fitness. */
+    private final Supplier<Fitness> _fitness;
+
+    /** The stepping-rotor orders to search. */
+    private final List<String[]> _orders = steppingOrders();
+
+    /** Number of keys tried so far. */
+    private final LongAdder _tested = new LongAdder();
+}
@@ -1,5 +1,10 @@
 package enigma;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /** Class that represents a complete enigma machine.
  *  @author Allen Yu
  */
@@ -13,6 +18,36 @@ class Machine {
         return _rotors;
     }
 
+    /** My plugboard. */
+    private Plugboard _plugboard = Plugboard.NONE;
+
+    /** Returns my plugboard. */
+    Plugboard getPlugboard() {
+        return _plugboard;
+    }
+
+    /** Set my plugboard to PLUGBOARD. */
+    void setPlugboard(Plugboard plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** True iff I convert through a compiled SubstitutionTable. */
+    private boolean _compiled;
+
+    /** The table last used in compiled mode, or null. */
+    private SubstitutionTable _table;
+
+    /** The Odometer last returned by odometer(), or null. */
+    private Odometer _odometer;
+
+    /** The wirings of the stepping rotors, from left to right, for
+     *  which _odometer was built. */
+    private final Wiring[] _odometerWirings = new Wiring[3];
+
+    /** Number of letters converted rotor by rotor in compiled mode since
+     *  I was last configured. */
+    private int _uncompiled;
+
     /** Constructor for the Machine. */
     public Machine() {
         _rotors = new Rotor[5];
@@ -26,59 +61,339 @@ class Machine {
         }
     }
 
+    /** Configure me as CONFIG says.  Rotors whose wiring is unchanged
+     *  are kept and only have their settings reset, so that switching
+     *  between configurations allocates nothing in the common case. */
+    void configure(Configuration config) {
+        for (int i = 0; i < _rotors.length; i += 1) {
+            Wiring wiring = config.getWiring(i);
+            if (_rotors[i] == null || _rotors[i].getWiring() != wiring) {
+                _rotors[i] = newRotor(i, wiring);
+            }
+            _rotors[i].set(i == 0 ? 0 : config.getSetting(i));
+        }
+        _plugboard = config.getPlugboard();
+        _uncompiled = 0;
+        Stats.CONFIGURATIONS.increment();
+    }
+
+    /** Returns a new rotor with the given WIRING for position POSN
+     *  (0 for the reflector).  Rotors are never shared between
+     *  Machines; only their Wirings are. */
+    private static Rotor newRotor(int posn, Wiring wiring) {
+        if (posn == 0) {
+            return new Reflector(wiring);
+        } else if (posn == 1) {
+            return new FixedRotor(wiring);
+        } else {
+            return new Rotor(wiring);
+        }
+    }
+
     /** Set my rotors according to SETTING, which must be a string of four
      *  upper-case letters. The first letter refers to the leftmost
      *  rotor setting.  */
     void setRotors(String setting) {
         for (int i = 0; i < 4; i += 1) {
-            _rotors[i + 1].set(setting.charAt(i));
+            _rotors[i + 1].set(Rotor.toIndex(setting.charAt(i)));
+        }
+    }
+
+    /** Returns the ring settings of my rotors that have settings, in
+     *  the form accepted by setRotors. */
+    String getRings() {
+        char[] rings = new char[4];
+        for (int i = 0; i < 4; i += 1) {
+            rings[i] = Rotor.toLetter(_rotors[i + 1].getRing());
+        }
+        return new String(rings);
+    }
+
+    /** Use a compiled substitution table for conversion iff COMPILED.
+     *  Compiled tables are shared through TableCache, so that turning
+     *  this on is cheap for all but the first Machine with a given
+     *  rotor order.  A table that is not yet cached is compiled only
+     *  once COMPILE_AFTER letters have been converted under the current
+     *  configuration, rotor by rotor until then, so that configurations
+     *  used for only a few short messages do not pay for compiling. */
+    void setCompiled(boolean compiled) {
+        _compiled = compiled;
+    }
+
+    /** Returns true iff I am in compiled mode. */
+    boolean isCompiled() {
+        return _compiled;
+    }
+
+    /** Number of letters converted rotor by rotor in compiled mode
+     *  before a table is compiled.  Compiling takes about as long as
+     *  converting this many letters rotor by rotor. */
+    static final int COMPILE_AFTER = 1 << 18;
+
+    /** Returns my SubstitutionTable if it is already compiled, and
+     *  otherwise null. */
+    SubstitutionTable cachedTable() {
+        if (_table == null || !_table.matches(_rotors, _plugboard)) {
+            _table = TableCache.peek(_rotors, _plugboard);
+        }
+        return _table;
+    }
+
+    /** Returns the table with which to convert the next N letters in
+     *  compiled mode, or null if they are to be converted rotor by
+     *  rotor because no table is worth compiling yet. */
+    private SubstitutionTable compiledTable(int n) {
+        SubstitutionTable table = cachedTable();
+        if (table == null) {
+            if (_uncompiled + n < COMPILE_AFTER) {
+                _uncompiled += n;
+            } else {
+                table = table();
+            }
+        }
+        return table;
+    }
+
+    /** Returns the SubstitutionTable for my current rotor order and
+     *  plugboard. */
+    SubstitutionTable table() {
+        if (_table == null || !_table.matches(_rotors, _plugboard)) {
+            _table = TableCache.get(_rotors, _plugboard);
+        }
+        return _table;
+    }
+
+    /** Returns the state of my stepping rotors, as understood by
+     *  SubstitutionTable. */
+    int state() {
+        return SubstitutionTable.state(_rotors[2].getSetting(),
+                                       _rotors[3].getSetting(),
+                                       _rotors[4].getSetting());
+    }
+
+    /** Set my stepping rotors to state S. */
+    void setState(int s) {
+        _rotors[2].set(SubstitutionTable.leftSetting(s));
+        _rotors[3].set(SubstitutionTable.middleSetting(s));
+        _rotors[4].set(SubstitutionTable.rightSetting(s));
+    }
+
+    /** Returns my rotor settings, in the form accepted by setRotors,
+     *  as they will be after N >= 0 further key presses.  This takes
+     *  constant time however large N is. */
+    String positionAfter(long n) {
+        int s = odometer().advance(state(), n);
+        return new String(new char[] {
+            Rotor.toLetter(_rotors[1].getSetting()),
+            Rotor.toLetter(SubstitutionTable.leftSetting(s)),
+            Rotor.toLetter(SubstitutionTable.middleSetting(s)),
+            Rotor.toLetter(SubstitutionTable.rightSetting(s))
+        });
+    }
+
+    /** Advance my rotors as N >= 0 key presses would, without
+     *  converting anything. This takes constant time. */
+    void skip(long n) {
+        setState(odometer().advance(state(), n));
+    }
+
+    /** Returns the Odometer of my current stepping rotors.  It is
+     *  taken from my compiled table when one is cached, and otherwise
+     *  built from the rotors' notches alone, so that seeking never
+     *  compiles a table.  It is kept until my stepping rotors change. */
+    Odometer odometer() {
+        if (_odometer == null
+            || _odometerWirings[0] != _rotors[2].getWiring()
+            || _odometerWirings[1] != _rotors[3].getWiring()
+            || _odometerWirings[2] != _rotors[4].getWiring()) {
+            SubstitutionTable table = cachedTable();
+            _odometer = table != null ? table.odometer()
+                : new Odometer(_rotors[2], _rotors[3], _rotors[4]);
+            for (int i = 0; i < _odometerWirings.length; i += 1) {
+                _odometerWirings[i] = _rotors[i + 2].getWiring();
+            }
         }
+        return _odometer;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
         char[] message = msg.toCharArray();
-        char[] newmsg = new char[msg.length()];
-        int newout = 0;
-        for (int i = 0; i < msg.length(); i += 1) {
-            if (Rotor.toIndex(message[i]) >= Rotor.ALPHABET_SIZE
-                    || Rotor.toIndex(message[i]) < 0) {
-                System.exit(1);
+        convert(message, 0, message.length, message, 0);
+        return new String(message);
+    }
+
+    /** Convert the LEN upper-case letters IN[OFF .. OFF+LEN-1] into
+     *  OUT[OUTOFF .. OUTOFF+LEN-1], updating the state of the rotors
+     *  accordingly.  IN and OUT may be the same array, and the ranges
+     *  may coincide.  Nothing is allocated. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        Stats.CHARACTERS.add(len);
+        SubstitutionTable table = _compiled ? compiledTable(len) : null;
+        if (table != null) {
+            int s = state();
+            for (int i = 0; i < len; i += 1) {
+                int p = checkedIndex(in[off + i]);
+                s = table.next(s);
+                out[outOff + i] = Rotor.toLetter(table.convert(s, p));
+            }
+            setState(s);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                int p = checkedIndex(in[off + i]);
+                out[outOff + i] = Rotor.toLetter(convertIndex(p));
             }
-            if (_rotors[4].atNotch() && _rotors[3].atNotch()
-                    && _rotors[2].atNotch()) {
-                _rotors[3].advance();
-                _rotors[2].advance();
-            } else if (_rotors[3].atNotch() && _rotors[2].atNotch()) {
-                _rotors[3].advance();
-                _rotors[2].advance();
-            } else if (_rotors[4].atNotch() && _rotors[2].atNotch()) {
-                _rotors[3].advance();
-                _rotors[2].advance();
-            } else if (_rotors[4].atNotch() && _rotors[3].atNotch()) {
-                _rotors[3].advance();
-                _rotors[2].advance();
-            } else if (_rotors[4].atNotch()) {
-                _rotors[3].advance();
-            } else if (_rotors[3].atNotch()) {
-                _rotors[3].advance();
-                _rotors[2].advance();
+        }
+    }
+
+    /** Convert the ASCII upper-case letters between the position and
+     *  limit of BUF in place, updating the state of the rotors
+     *  accordingly, and leave the position of BUF at its limit. */
+    void convert(ByteBuffer buf) {
+        int lim = buf.limit();
+        Stats.CHARACTERS.add(lim - buf.position());
+        SubstitutionTable table =
+            _compiled ? compiledTable(lim - buf.position()) : null;
+        if (table != null) {
+            int s = state();
+            for (int i = buf.position(); i < lim; i += 1) {
+                int p = checkedIndex((char) buf.get(i));
+                s = table.next(s);
+                buf.put(i, (byte) Rotor.toLetter(table.convert(s, p)));
             }
-            _rotors[4].advance();
-            newout = _rotors[4].encryptForward(Rotor.toIndex(message[i]),
-                    _rotors[4].getSetting());
-            for (int k = 3; k > -1; k -= 1) {
-                newout = _rotors[k].encryptForward(newout,
-                        _rotors[k].getSetting());
+            setState(s);
+        } else {
+            for (int i = buf.position(); i < lim; i += 1) {
+                int p = checkedIndex((char) buf.get(i));
+                buf.put(i, (byte) Rotor.toLetter(convertIndex(p)));
             }
-            for (int j = 1; j < 5; j += 1) {
-                newout = _rotors[j].encryptBackward(newout,
-                        _rotors[j].getSetting());
+        }
+        buf.position(lim);
+    }
+
+    /** Convert the ASCII upper-case letters remaining in IN into OUT,
+     *  which must have at least as much space remaining, updating the
+     *  state of the rotors accordingly.  The positions of both buffers
+     *  are advanced past the letters converted. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        int start = out.position();
+        int len = in.remaining();
+        if (len > out.remaining()) {
+            throw new BufferOverflowException();
+        }
+        out.put(in);
+        ByteBuffer view = out.duplicate();
+        view.position(start).limit(start + len);
+        convert(view);
+    }
+
+    /** Returns the index of the upper-case letter C. It is an error
+     *  if C is anything else. */
+    private static int checkedIndex(char c) {
+        int p = Rotor.toIndex(c);
+        if (p >= Rotor.ALPHABET_SIZE || p < 0) {
+            throw EnigmaException.error("not a letter: '%c'", c);
+        }
+        return p;
+    }
+
+    /** Returns the conversion of P (an integer in the range 0..25),
+     *  stepping and passing through each rotor in turn. */
+    int convertIndex(int p) {
+        boolean notch2 = _rotors[2].atNotch();
+        boolean notch3 = _rotors[3].atNotch();
+        boolean notch4 = _rotors[4].atNotch();
+        if (notch3 || notch4) {
+            _rotors[3].advance();
+        }
+        if (notch3 || (notch4 && notch2)) {
+            _rotors[2].advance();
+        }
+        _rotors[4].advance();
+        int newout = _rotors[4].encryptForward(_plugboard.convert(p),
+                                               _rotors[4].getSetting());
+        for (int k = 3; k > -1; k -= 1) {
+            newout = _rotors[k].encryptForward(newout,
+                    _rotors[k].getSetting());
+        }
+        for (int j = 1; j < 5; j += 1) {
+            newout = _rotors[j].encryptBackward(newout,
+                    _rotors[j].getSetting());
+        }
+        return _plugboard.convert(newout);
+    }
+
+    /** Messages shorter than this are not worth splitting. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Returns the encoding/decoding of MSG, updating the state of the
+     *  rotors accordingly, exactly as convert does.  Messages of at
+     *  least PARALLEL_THRESHOLD letters are split into chunks that are
+     *  converted concurrently in the common fork/join pool, each chunk
+     *  starting from the rotor state that my Odometer computes for its
+     *  offset; shorter ones are simply converted. */
+    String convertParallel(String msg) {
+        if (msg.length() < PARALLEL_THRESHOLD) {
+            return convert(msg);
+        }
+        char[] message = msg.toCharArray();
+        for (char c : message) {
+            checkedIndex(c);
+        }
+        char[] newmsg = new char[message.length];
+        Stats.CHARACTERS.add(message.length);
+        SubstitutionTable table = table();
+        int s = state();
+        ForkJoinPool.commonPool().invoke(
+            new ConvertTask(table, s, message, newmsg, 0, message.length));
+        setState(table.odometer().advance(s, message.length));
+        return new String(newmsg);
+    }
+
+    /** Converts a range of a message whose first character is
+     *  converted after one key press from a given state. */
+    private static class ConvertTask extends RecursiveAction {
+
+        /** A task converting IN[LO .. HI-1] into OUT[LO .. HI-1] with
+         *  TABLE, for a message that starts in state START. */
+        ConvertTask(SubstitutionTable table, int start, char[] in,
+                    char[] out, int lo, int hi) {
+            _table = table;
+            _start = start;
+            _in = in;
+            _out = out;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= PARALLEL_THRESHOLD) {
+                int s = _table.odometer().advance(_start, _lo);
+                for (int i = _lo; i < _hi; i += 1) {
+                    s = _table.next(s);
+                    _out[i] = Rotor.toLetter(
+                        _table.convert(s, Rotor.toIndex(_in[i])));
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ConvertTask(_table, _start, _in, _out,
+                                          _lo, mid),
+                          new ConvertTask(_table, _start, _in, _out,
+                                          mid, _hi));
             }
-            newmsg[i] = Rotor.toLetter(newout);
         }
-        String answer = new String(newmsg);
-        return answer;
+
+        /** The table to convert with. */
+        private final SubstitutionTable _table;
+        /** State of the machine before the whole message. */
+        private final int _start;
+        /** The whole message. */
+        private final char[] _in;
+        /** The whole result. */
+        private final char[] _out;
+        /** The range of _in I convert. */
+        private final int _lo, _hi;
     }
 }
@@ -1,8 +1,35 @@
 package enigma;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.error;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
@@ -15,131 +42,179 @@ public final class Main {
     /** Process a sequence of encryptions and decryptions, as
      *  specified in the input from the standard input.  Print the
      *  results on the standard output. Exits normally if there are
-     *  no errors in the input; otherwise with code 1. */
-    public static void main(String[] unused) {
+     *  no errors in the input; otherwise with code 1.  With the
+     *  option --compiled, each configuration converts through a
+     *  compiled, cached SubstitutionTable.  With --parallel, long
+     *  message lines are also split across all processors.  With
+     *  --stream, input is translated in large chunks in a single
+     *  pass rather than line by line.  With --mapped INPUT OUTPUT,
+     *  the file INPUT is translated into the file OUTPUT through
+     *  memory-mapped regions of both.  With --server PORT, or
+     *  --server PATH for a Unix-domain socket, a Server handles any
+     *  number of independent sessions instead.  With --stats, the
+     *  counters of Stats are published through JMX and Java Flight
+     *  Recorder while running, and summarized on the standard error
+     *  at exit. */
+    public static void main(String[] args) {
+        boolean compiled = false, parallel = false, stream = false,
+            stats = false;
+        String mappedInput = null, mappedOutput = null, address = null;
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].equals("--compiled")) {
+                compiled = true;
+            } else if (args[i].equals("--parallel")) {
+                compiled = parallel = true;
+            } else if (args[i].equals("--stream")) {
+                stream = true;
+            } else if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--mapped") && i + 2 < args.length) {
+                mappedInput = args[i + 1];
+                mappedOutput = args[i + 2];
+                i += 2;
+            } else if (args[i].equals("--server") && i + 1 < args.length) {
+                address = args[i + 1];
+                i += 1;
+            } else {
+                System.err.printf("Unknown option: %s%n", args[i]);
+                System.exit(1);
+            }
+        }
+        if (stats) {
+            Stats.register();
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> Stats.report(System.err)));
+        }
+        try {
+            if (address != null) {
+                new Server(address).serve();
+            } else if (mappedInput != null) {
+                translateMapped(mappedInput, mappedOutput);
+            } else if (stream) {
+                translateStream();
+            } else {
+                translateLines(compiled, parallel);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Translate the standard input to the standard output line by
+     *  line, converting in compiled mode iff COMPILED, and with
+     *  convertParallel iff PARALLEL.  The time spent configuring and
+     *  standardizing, converting, and printing is added to Stats
+     *  when it is registered. */
+    private static void translateLines(boolean compiled, boolean parallel)
+        throws IOException {
         Machine M;
         BufferedReader input =
             new BufferedReader(new InputStreamReader(System.in));
 
-        buildRotors();
-
         M = null;
 
-        try {
-            while (true) {
-                String line = input.readLine();
-                if (line == null) {
-                    break;
-                }
-                if (isConfigurationLine(line)) {
+        while (true) {
+            String line = input.readLine();
+            if (line == null) {
+                break;
+            }
+            if (isConfigurationLine(line)) {
+                if (M == null) {
                     M = new Machine();
-                    configure(M, line);
-                } else if (M == null) {
-                    System.exit(1);
-                } else {
-                    printMessageLine(M.convert(standardize(line)));
+                    M.setCompiled(compiled);
                 }
+                long start = Stats.now();
+                configure(M, line);
+                Stats.PARSE_NANOS.add(Stats.now() - start);
+            } else if (M == null) {
+                throw error("message before first configuration");
+            } else {
+                long start = Stats.now();
+                String msg = standardize(line);
+                long converting = Stats.now();
+                msg = parallel ? M.convertParallel(msg) : M.convert(msg);
+                long printing = Stats.now();
+                printMessageLine(msg);
+                long end = Stats.now();
+                Stats.PARSE_NANOS.add(converting - start);
+                Stats.CONVERT_NANOS.add(printing - converting);
+                Stats.OUTPUT_NANOS.add(end - printing);
             }
-        } catch (IOException excp) {
-            System.err.printf("Input error: %s%n", excp.getMessage());
-            System.exit(1);
+        }
+    }
+
+    /** Translate the standard input to the standard output with a
+     *  Translator, reading and writing through channels.  The
+     *  Translator adds its times to Stats. */
+    private static void translateStream() throws IOException {
+        FileChannel in = new FileInputStream(FileDescriptor.in).getChannel();
+        FileChannel out =
+            new FileOutputStream(FileDescriptor.out).getChannel();
+        Translator translator =
+            new Translator(ByteBuffer.allocateDirect(Translator.BUFFER_SIZE),
+                           out);
+        translator.translate(in,
+                             ByteBuffer.allocateDirect(Translator.BUFFER_SIZE));
+    }
+
+    /** Translate the file named INPUT into the file named OUTPUT with
+     *  a MappedTranslator. */
+    private static void translateMapped(String input, String output)
+        throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(input),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(output),
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption
+                                                .TRUNCATE_EXISTING)) {
+            new MappedTranslator(out).translate(in);
         }
     }
 
     /** Return true iff LINE is an Enigma configuration line. */
-    private static boolean isConfigurationLine(String line) {
+    static boolean isConfigurationLine(String line) {
         return (line.startsWith("*"));
     }
 
     /** Configure M according to the specification given on CONFIG,
-     *  which must have the format specified in the assignment. */
-    private static void configure(Machine M, String config) {
-        String[] newconfig = config.substring(2).split(" ");
-        if (newconfig.length != 6) {
-            System.exit(1);
-        }
-        if (newconfig[5].length() != 4) {
-            System.exit(1);
-        }
-        char[] settings = newconfig[5].toCharArray();
-        for (int i = 0; i < 5; i += 1) {
-            for (int k = 0; k < PermutationData.ROTOR_SPECS.length; k += 1) {
-                if (newconfig[i].equals(ROTORS[k].getType())) {
-                    M.getRotors()[i] = ROTORS[k];
-                    for (int j = i - 1; j > 0; j -= 1) {
-                        if (ROTORS[k] == M.getRotors()[j]) {
-                            System.exit(1);
-                        }
-                    }
-                    if (i > 0) {
-                        if ((settings[i - 1] - 'A') >= Rotor.ALPHABET_SIZE
-                                || (settings[i - 1] - 'A') < 0) {
-                            System.exit(1);
-                        }
-                        M.getRotors()[i].set(Rotor.toIndex(settings[i - 1]));
-                    }
-                }
-            }
-        }
-        for (int x = 0; x < 5; x += 1) {
-            if (x == 0 && !M.getRotors()[0].getType().equals("B")
-                    && !M.getRotors()[x].getType().equals("C")) {
-                System.exit(1);
-            }
-            if (x == 1 && !M.getRotors()[1].getType().equals("BETA")
-                    && !M.getRotors()[1].getType().equals("GAMMA")) {
-                System.exit(1);
-            }
-            if (x > 1 && x < 5 && !M.getRotors()[x].getType().equals("I")
-                    && !M.getRotors()[x].getType().equals("II")
-                    && !M.getRotors()[x].getType().equals("III")
-                    && !M.getRotors()[x].getType().equals("IV")
-                    && !M.getRotors()[x].getType().equals("V")
-                    && !M.getRotors()[x].getType().equals("VI")
-                    && !M.getRotors()[x].getType().equals("VII")
-                    && !M.getRotors()[x].getType().equals("VIII")) {
-                System.exit(1);
-            }
-        }
-        for (int j = 0; j < 5; j += 1) {
-            if (M.getRotors()[j] == null) {
-                System.exit(1);
-            }
-        }
+     *  which must have the format specified in the assignment,
+     *  optionally followed by four letters giving the ring settings of
+     *  the rotors that have settings, and then by plugboard pairs such
+     *  as "AB CD". */
+    static void configure(Machine M, String config) {
+        M.configure(Configuration.parse(config));
     }
 
     /** Return the result of converting LINE to all upper case,
      *  removing all blanks and tabs.  It is an error if LINE contains
      *  characters other than letters and blanks. */
-    private static String standardize(String line) {
+    static String standardize(String line) {
         return line.replaceAll(" ", "").toUpperCase();
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private static void printMessageLine(String msg) {
-        while (msg.length() > 5) {
-            System.out.print(msg.substring(0, 5) + " ");
-            msg = msg.substring(5);
-        }
-        System.out.println(msg);
+        System.out.println(groups(msg));
     }
 
-    /**  Array of the Rotors of the Machine. */
-    private static final Rotor[] ROTORS =
-            new Rotor[PermutationData.ROTOR_SPECS.length];
-
-    /** Create all the necessary rotors. */
-    private static void buildRotors() {
-        for (int i = 0; i < PermutationData.ROTOR_SPECS.length; i += 1) {
-            if (i == 8) {
-                ROTORS[i] = new FixedRotor(PermutationData.ROTOR_SPECS[i][0]);
-            } else if (i == 10) {
-                ROTORS[i] = new Reflector(PermutationData.ROTOR_SPECS[i][0]);
-            } else {
-                ROTORS[i] = new Rotor(PermutationData.ROTOR_SPECS[i][0]);
+    /** Returns MSG in groups of five separated by blanks, as printed by
+     *  printMessageLine. */
+    static String groups(String msg) {
+        StringBuilder out = new StringBuilder(msg.length() * 6 / 5 + 1);
+        for (int i = 0; i < msg.length(); i += 5) {
+            if (i > 0) {
+                out.append(' ');
             }
+            out.append(msg, i, Math.min(i + 5, msg.length()));
         }
+        return out.toString();
     }
 
     /* JUnit tests for the class Main. */
@@ -154,7 +229,6 @@ public final class Main {
     /** Tests configure method and the convert method. */
     @Test
     public void test2() {
-        buildRotors();
         String configln = "* B BETA I II III AAAA";
         String line = "Hello World";
         Machine T = new Machine();
@@ -171,6 +245,563 @@ public final class Main {
         assertEquals(T.convert(standardize(line)), "ILBDAAMTAZ");
     }
 
+    /** Tests that compiled conversion agrees with rotor-by-rotor
+     *  conversion, including double stepping. */
+    @Test
+    public void testCompiled() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine T = new Machine();
+        configure(T, "* C GAMMA VI VIII II QMYD");
+        String expected = T.convert(msg);
+        configure(T, "* C GAMMA VI VIII II QMYD");
+        T.setCompiled(true);
+        assertEquals(expected, T.convert(msg));
+        assertEquals(T.getRotors()[4].getSetting(),
+                     Rotor.toIndex('D') + msg.length() % 26);
+    }
+
+    /** Tests that positionAfter and skip agree with converting the
+     *  same number of characters, without compiling a table. */
+    @Test
+    public void testSeek() {
+        TableCache.clear();
+        Machine T = new Machine();
+        for (String config : new String[] {
+                "* B BETA III IV I AXLE", "* C GAMMA VI VIII VII ZMZM",
+                "* B BETA I II III ADQV" }) {
+            configure(T, config);
+            String start = config.substring(config.length() - 4);
+            for (int n = 0; n < 2000; n += 37) {
+                T.setRotors(start);
+                T.convert(new String(new char[n]).replace('\0', 'A'));
+                String expected = T.positionAfter(0);
+                T.setRotors(start);
+                assertEquals(expected, T.positionAfter(n));
+                T.skip(n);
+                assertEquals(expected, T.positionAfter(0));
+            }
+            assertNull(T.cachedTable());
+        }
+    }
+
+    /** Tests that convertParallel agrees with convert on a message
+     *  long enough to be split. */
+    @Test
+    public void testParallel() {
+        StringBuilder msg = new StringBuilder();
+        Random random = new Random(61);
+        while (msg.length() < 5 * Machine.PARALLEL_THRESHOLD + 17) {
+            msg.append(Rotor.toLetter(random.nextInt(Rotor.ALPHABET_SIZE)));
+        }
+        Machine T = new Machine();
+        configure(T, "* B BETA V VI VII AZMY");
+        String expected = T.convert(msg.toString());
+        String position = T.positionAfter(0);
+        configure(T, "* B BETA V VI VII AZMY");
+        assertEquals(expected, T.convertParallel(msg.toString()));
+        assertEquals(position, T.positionAfter(0));
+    }
+
+    /** Tests that Machines configured alike share wirings but not
+     *  rotor settings. */
+    @Test
+    public void testIndependentMachines() {
+        Machine T1 = new Machine(), T2 = new Machine();
+        configure(T1, "* B BETA I II III AAAA");
+        configure(T2, "* B BETA I II III AAAA");
+        assertSame(T1.getRotors()[2].getWiring(),
+                   T2.getRotors()[2].getWiring());
+        assertEquals(T1.convert("HELLOWORLD"), "ILBDAAMTAZ");
+        assertEquals(T2.convert("HELLOWORLD"), "ILBDAAMTAZ");
+    }
+
+    /** Tests the bulk char[] and ByteBuffer forms of convert. */
+    @Test
+    public void testBulkConvert() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine T = new Machine();
+        configure(T, "* B BETA III IV I AXLE");
+        String expected = T.convert(msg);
+        for (boolean compiled : new boolean[] { false, true }) {
+            char[] buf = ("xx" + msg).toCharArray();
+            configure(T, "* B BETA III IV I AXLE");
+            T.setCompiled(compiled);
+            T.convert(buf, 2, 10, buf, 0);
+            T.convert(buf, 12, msg.length() - 10, buf, 10);
+            assertEquals(expected, new String(buf, 0, msg.length()));
+
+            ByteBuffer bytes = ByteBuffer.allocateDirect(msg.length());
+            bytes.put(msg.getBytes()).flip();
+            configure(T, "* B BETA III IV I AXLE");
+            T.setCompiled(compiled);
+            T.convert(bytes);
+            assertEquals(bytes.position(), msg.length());
+            byte[] result = new byte[msg.length()];
+            bytes.flip();
+            bytes.get(result);
+            assertEquals(expected, new String(result));
+        }
+    }
+
+    /** Tests that a Translator fed in small pieces produces the same
+     *  output as line-by-line translation. */
+    @Test
+    public void testTranslator() throws IOException {
+        String input = "* B BETA III IV I AXLE\r\nFROM his shoulder\n\n"
+            + "Hiawatha\r* C GAMMA VI VIII II QMYD\nTook the camera";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Translator translator =
+            new Translator(ByteBuffer.allocate(7), Channels.newChannel(bytes));
+        byte[] data = input.getBytes();
+        for (int i = 0; i < data.length; i += 3) {
+            translator.translate(
+                ByteBuffer.wrap(data, i, Math.min(3, data.length - i)));
+        }
+        translator.finish();
+        assertEquals("HYIHL BKOML IUYDC\n\nMPPSF SZW\nCVYQW DKNHQ RSW\n",
+                     bytes.toString());
+    }
+
+    /** Tests that Server.respond answers good lines and leaves a
+     *  session as it was after bad ones. */
+    @Test
+    public void testServerRespond() {
+        String config = "* B BETA III IV I AXLE";
+        Machine T = new Machine();
+        configure(T, config);
+        String expected = groups(T.convert("HELLOWORLD"));
+        char[] longer = new char[Machine.COMPILE_AFTER + 10];
+        Arrays.fill(longer, 'E');
+        longer[longer.length - 1] = '1';
+        StringWriter text = new StringWriter();
+        PrintWriter output = new PrintWriter(text);
+        TableCache.clear();
+        Machine M = null;
+        for (String bad : new String[] { "HELLOWORLD", config }) {
+            try {
+                M = Server.respond(M, bad, output);
+            } catch (EnigmaException excp) {
+                assertNull(M);
+            }
+        }
+        assertNotNull(M);
+        int state = M.state();
+        for (String bad : new String[] {
+                "* B BETA III IV XI AXLE", "HELLO1WORLD",
+                new String(longer) }) {
+            try {
+                Server.respond(M, bad, output);
+                fail(bad);
+            } catch (EnigmaException excp) {
+                assertEquals(state, M.state());
+            }
+        }
+        assertSame(M, Server.respond(M, "HELLO WORLD", output));
+        output.flush();
+        assertEquals(expected + System.lineSeparator(), text.toString());
+    }
+
+    /** Tests that the stream and mapped translators write the output
+     *  of every line before an erroneous configuration line. */
+    @Test
+    public void testBadConfigurationOutput() throws IOException {
+        String input = "* B BETA III IV I AXLE\nHello world\n"
+            + "* B BETA III IV XX AXLE\nHello again\n";
+        Machine M = new Machine();
+        configure(M, "* B BETA III IV I AXLE");
+        String expected = groups(M.convert("HELLOWORLD")) + "\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Translator translator =
+            new Translator(ByteBuffer.allocate(1 << 10),
+                           Channels.newChannel(bytes));
+        try {
+            translator.translate(ByteBuffer.wrap(input.getBytes()));
+            translator.finish();
+            fail("bad configuration accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(expected, bytes.toString());
+        }
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(in, input.getBytes());
+            try (FileChannel inChannel = FileChannel.open(in);
+                 FileChannel outChannel =
+                     FileChannel.open(out, StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE)) {
+                new MappedTranslator(outChannel).translate(inChannel);
+                fail("bad configuration accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected, new String(Files.readAllBytes(out)));
+            }
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    /** Tests that configurations are cached and validated, that a
+     *  reused Machine keeps its rotors, and that compiled mode compiles
+     *  a new table only after enough letters, converting the same way
+     *  before and after. */
+    @Test
+    public void testConfigurationSwitching() throws IOException {
+        String config = "* B BETA V VI VII QRST";
+        assertSame(Configuration.parse(config), Configuration.parse(config));
+        Machine M = new Machine();
+        configure(M, config);
+        Rotor fixed = M.getRotors()[1];
+        configure(M, "* C BETA V VII VI ABCD");
+        assertSame(fixed, M.getRotors()[1]);
+        assertEquals("ABCD", M.positionAfter(0));
+        for (String bad : new String[] {
+                "* BETA BETA V VI VII AAAA", "* B B V VI VII AAAA",
+                "* B BETA V VI GAMMA AAAA", "* B BETA V VI V AAAA",
+                "* B BETA V VI VII AAA", "* B BETA V VI VII AAAA AAA" }) {
+            try {
+                configure(M, bad);
+                fail(bad);
+            } catch (EnigmaException excp) {
+                assertEquals("ABCD", M.positionAfter(0));
+            }
+        }
+        TableCache.clear();
+        char[] msg = new char[Machine.COMPILE_AFTER + 100];
+        Arrays.fill(msg, 'E');
+        Machine plain = new Machine(), compiled = new Machine();
+        configure(plain, config);
+        configure(compiled, config);
+        compiled.setCompiled(true);
+        String expected = plain.convert(new String(msg));
+        assertEquals(expected.substring(0, 10),
+                     compiled.convert(new String(msg, 0, 10)));
+        assertNull(compiled.cachedTable());
+        assertEquals(expected.substring(10),
+                     compiled.convert(new String(msg, 10, msg.length - 10)));
+        assertNotNull(compiled.cachedTable());
+        TableCache.clear();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Translator translator = new Translator(ByteBuffer.allocate(1 << 10),
+                                               Channels.newChannel(bytes));
+        translator.translate(ByteBuffer.wrap(
+            (config + "\n" + new String(msg) + "\n").getBytes()));
+        translator.finish();
+        assertEquals(groups(expected) + "\n", bytes.toString());
+    }
+
+    /** Tests that Stats counts conversions, configurations, and table
+     *  compilations, that it times Translators, and that its counters
+     *  are readable through JMX. */
+    @Test
+    public void testStats() throws Exception {
+        Stats.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Stats.OBJECT_NAME);
+        String config = "* B BETA III IV I AXLE";
+        Configuration.clearCache();
+        TableCache.clear();
+        long characters = Stats.CHARACTERS.sum(),
+            configurations = Stats.CONFIGURATIONS.sum(),
+            parses = Stats.CONFIGURATION_MISSES.sum(),
+            hits = Stats.CONFIGURATION_HITS.sum(),
+            compiles = Stats.TABLE_MISSES.sum();
+        Machine M = new Machine();
+        configure(M, config);
+        configure(M, config);
+        M.convert("HELLOWORLD");
+        M.table();
+        M.table();
+        assertEquals(10, Stats.CHARACTERS.sum() - characters);
+        assertEquals(2, Stats.CONFIGURATIONS.sum() - configurations);
+        assertEquals(1, Stats.CONFIGURATION_MISSES.sum() - parses);
+        assertEquals(1, Stats.CONFIGURATION_HITS.sum() - hits);
+        assertEquals(1, Stats.TABLE_MISSES.sum() - compiles);
+        assertEquals(Stats.CHARACTERS.sum(),
+                     server.getAttribute(name, "CharactersConverted"));
+        long parse = Stats.PARSE_NANOS.sum(),
+            convert = Stats.CONVERT_NANOS.sum(),
+            output = Stats.OUTPUT_NANOS.sum();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Translator translator = new Translator(ByteBuffer.allocate(1 << 10),
+                                               Channels.newChannel(bytes));
+        translator.translate(ByteBuffer.wrap(
+            (config + "\nHELLOWORLD\n").getBytes()));
+        translator.finish();
+        assertTrue("parse time", Stats.PARSE_NANOS.sum() > parse);
+        assertTrue("convert time", Stats.CONVERT_NANOS.sum() > convert);
+        assertTrue("output time", Stats.OUTPUT_NANOS.sum() > output);
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "TableCacheMisses"));
+    }
+
+    /** Tests that KeySearch ranks the true key of a message first
+     *  among the keys of its rotor order. */
+    @Test
+    public void testKeySearch() {
+        Machine T = new Machine();
+        configure(T, "* B BETA III IV I AXLE");
+        String msg = T.convert(standardize(
+            "From his shoulder Hiawatha took the camera of rosewood made of "
+            + "sliding folding rosewood neatly put it all together in its "
+            + "case it lay compactly folded into nearly nothing but he "
+            + "opened out the hinges pushed and pulled the joints and "
+            + "hinges till it looked all squares and oblongs like a "
+            + "complicated figure in the second book of euclid"));
+        byte[] ciphertext = standardizeLetters(msg);
+        KeySearch search =
+            new KeySearch(ciphertext, 3, IndexOfCoincidence::new);
+        List<Candidate> best =
+            search.search(new String[] { "III", "IV", "I" },
+                          new Scrambler(new Rotor("III"), new Rotor("IV"),
+                                        new Rotor("I")),
+                          "B", "BETA").sorted();
+        assertEquals(3, best.size());
+        assertEquals("* B BETA III IV I AXLE", best.get(0).configuration());
+        assertEquals(KeySearch.KEYS_PER_ORDER / 4, search.tested());
+    }
+
+    /** Tests claiming, taking over, and checkpointing the work units of
+     *  a shared search. */
+    @Test
+    public void testSearchWorker() throws IOException {
+        Machine T = new Machine();
+        configure(T, "* B BETA III IV I AXLE");
+        byte[] ciphertext = standardizeLetters(T.convert(
+            "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD"));
+        Path dir = Files.createTempDirectory("search");
+        try {
+            checkSearchWorker(dir, ciphertext);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /** Check claiming, taking over, and checkpointing the work units of
+     *  a search of CIPHERTEXT shared through directory DIR. */
+    private static void checkSearchWorker(Path dir, byte[] ciphertext)
+        throws IOException {
+        SearchWorker.init(dir, ciphertext, 2, null);
+        SearchWorker first = new SearchWorker(dir),
+            second = new SearchWorker(dir);
+        int unit = 0;
+        for (String[] order : KeySearch.steppingOrders()) {
+            if (String.join(" ", order).equals("III IV I")) {
+                break;
+            }
+            unit += 4;
+        }
+        assertTrue(first.claim(unit));
+        assertFalse(second.claim(unit));
+        Files.setLastModifiedTime(
+            dir.resolve("claims").resolve(Integer.toString(unit)),
+            FileTime.fromMillis(0));
+        assertTrue(second.claim(unit));
+        second.complete(unit, second.search(unit));
+        assertTrue(first.isDone(unit));
+        assertFalse(first.claim(unit));
+        assertEquals(1, first.done());
+        List<Candidate> best = first.results();
+        assertEquals(2, best.size());
+        assertEquals(best.get(0).toString(),
+                     Candidate.parse(best.get(0).toString()).toString());
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder())
+                     .toArray(Path[]::new)) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Tests that the bombe stops at the true setting of a crib, and
+     *  nowhere else in its rotor order. */
+    @Test
+    public void testBombe() {
+        Machine T = new Machine();
+        configure(T, "* B BETA III IV I AXLE");
+        String crib = "TOOKTHECAMERAOFROSEWOOD";
+        byte[] ciphertext =
+            standardizeLetters(T.convert("FROMHISSHOULDERHIAWATHA" + crib));
+        List<Bombe.Stop> stops =
+            new Bombe(standardizeLetters(crib), ciphertext, 23)
+            .search(new String[] { "III", "IV", "I" },
+                    new Scrambler(new Rotor("III"), new Rotor("IV"),
+                                  new Rotor("I")),
+                    "B", "BETA");
+        assertEquals(1, stops.size());
+        assertEquals("* B BETA III IV I AXLE O=O", stops.get(0).toString());
+    }
+
+    /** Tests n-gram scoring of plaintext against ciphertext. */
+    @Test
+    public void testNgramScorer() throws IOException {
+        byte[] english = standardizeLetters(
+            "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+            + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+            + "FOLDEDINTONEARLYNOTHING");
+        NgramScorer scorer = NgramScorer.train(3, english, english.length);
+        assertEquals(3, scorer.length());
+        byte[] plain = standardizeLetters("THECAMERAFROMHISSHOULDER");
+        byte[] cipher = standardizeLetters("HYIHLBKOMLIUYDCMPPSFSZWX");
+        assertTrue(scorer.score(plain, plain.length)
+                   > scorer.score(cipher, cipher.length));
+        byte[] both = new byte[plain.length + cipher.length];
+        System.arraycopy(cipher, 0, both, 0, cipher.length);
+        System.arraycopy(plain, 0, both, cipher.length, plain.length);
+        assertEquals(scorer.score(plain, plain.length),
+                     scorer.score(both, cipher.length, plain.length), 1e-9);
+        NgramScorer loaded = NgramScorer.load(
+            new StringReader("th 3\nHE 1\n\nTH 2\n"));
+        assertEquals(Math.log10(5.0 / 6.0),
+                     loaded.logProbability(Rotor.toIndex('T') * 26
+                                           + Rotor.toIndex('H')), 1e-6);
+        assertEquals(Math.log10(5.0 / 6.0) + Math.log10(1.0 / 6.0),
+                     loaded.score(standardizeLetters("THE"), 3), 1e-6);
+    }
+
+    /** Tests plugboard conversion in both modes and plugboard
+     *  recovery by hill climbing. */
+    @Test
+    public void testPlugboard() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOF"
+            + "SLIDINGFOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAY"
+            + "COMPACTLYFOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGES"
+            + "PUSHEDANDPULLEDTHEJOINTSANDHINGESTILLITLOOKEDALLSQUARES"
+            + "ANDOBLONGSLIKEACOMPLICATEDFIGUREINTHESECONDBOOKOFEUCLID";
+        String config = "* B BETA III IV I AXLE";
+        Machine plain = new Machine(), compiled = new Machine();
+        configure(plain, config + " HT OE AR NS");
+        configure(compiled, config + " HT OE AR NS");
+        compiled.setCompiled(true);
+        String ciphertext = plain.convert(msg);
+        assertEquals(ciphertext, compiled.convert(msg));
+        assertEquals("AR EO HT NS", compiled.getPlugboard().toString());
+        Machine unplugged = new Machine();
+        configure(unplugged, config);
+        assertFalse(ciphertext.equals(unplugged.convert(msg)));
+        byte[] english = standardizeLetters(msg);
+        PlugboardSolver solver = new PlugboardSolver(
+            config, standardizeLetters(ciphertext),
+            () -> NgramScorer.train(3, english, english.length));
+        PlugboardSolver.Solution best =
+            solver.solve(8, 1, ForkJoinPool.commonPool());
+        Machine M = new Machine();
+        configure(M, best.configuration());
+        assertEquals(msg, M.convert(ciphertext));
+    }
+
+    /** Tests ring settings against a known message key, in both
+     *  modes, and that tables for different rings are distinct. */
+    @Test
+    public void testRings() {
+        Machine M = new Machine(), C = new Machine();
+        configure(M, "* B BETA I II III AAAA ABBB");
+        configure(C, "* B BETA I II III AAAA ABBB");
+        C.setCompiled(true);
+        assertEquals("EWTYX", M.convert("AAAAA"));
+        assertEquals("EWTYX", C.convert("AAAAA"));
+        assertEquals("ABBB", C.getRings());
+        configure(C, "* B BETA I II III AAAA");
+        assertEquals("BDZGO", C.convert("AAAAA"));
+        assertSame(Wiring.forName("IV"),
+                   Wiring.forName("IV").withRing(10).withRing(0));
+        assertEquals("IV/K", Wiring.forName("IV").withRing(10).toString());
+    }
+
+    /** Tests that a KeyBatch converts as separate machines would. */
+    @Test
+    public void testKeyBatch() {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        Scrambler scrambler = new Scrambler(new Rotor("III"),
+                                            new Rotor("IV"), new Rotor("I"));
+        KeyBatch batch = new KeyBatch(scrambler, 3);
+        Rotor reflector = new Reflector("B"), fixed = new FixedRotor("BETA");
+        for (int f : new int[] { 0, 23 }) {
+            fixed.set(f);
+            batch.addReflection(Scrambler.reflection(reflector, fixed));
+        }
+        for (String s : new String[] { "XLE", "AAA", "ZZZ" }) {
+            batch.add(SubstitutionTable.state(Rotor.toIndex(s.charAt(0)),
+                                              Rotor.toIndex(s.charAt(1)),
+                                              Rotor.toIndex(s.charAt(2))));
+        }
+        batch.convert(standardizeLetters(msg), msg.length());
+        assertEquals(6, batch.size());
+        for (int j = 0; j < batch.size(); j += 1) {
+            Machine M = new Machine();
+            configure(M, "* B BETA III IV I "
+                      + KeySearch.setting(batch.reflection(j) == 0 ? 0 : 23,
+                                          batch.start(j)));
+            byte[] expected = standardizeLetters(M.convert(msg));
+            for (int i = 0; i < msg.length(); i += 1) {
+                assertEquals(expected[i],
+                             batch.output()[j * msg.length() + i]);
+            }
+        }
+    }
+
+    /** Tests finding settings by ciphertext prefix in a small index. */
+    @Test
+    public void testPrefixIndex() throws IOException {
+        File file = File.createTempFile("prefix", ".idx");
+        file.deleteOnExit();
+        String[][] bad = {
+            { "FRO", "I BETA III IV II" }, { "FRO", "B BETA III IV IX" },
+            { "FRO", "B I III IV II" }, { "FRO", "B BETA III IV III" },
+            { "FRO", "B BETA III IV" }, { "FR1", "B BETA III IV I" },
+            { "F R O M H", "B BETA III IV I" }, { " ", "B BETA III IV I" },
+        };
+        for (String[] args : bad) {
+            try {
+                PrefixIndex.build(file.getPath(), args[0],
+                                  Arrays.asList(args[1]),
+                                  ForkJoinPool.commonPool());
+                fail(args[0] + ": " + args[1]);
+            } catch (EnigmaException excp) {
+                assertEquals("file written", 0, file.length());
+            }
+        }
+        Files.write(file.toPath(), ByteBuffer.allocate(4 * Integer.BYTES)
+                    .putInt(PrefixIndex.MAGIC).putInt(3).putInt(1)
+                    .putInt(Integer.MAX_VALUE).array());
+        try {
+            PrefixIndex.open(file.getPath());
+            fail("corrupt index opened");
+        } catch (EnigmaException excp) {
+            assertEquals("corrupt index file", excp.getMessage());
+        }
+        PrefixIndex.build(file.getPath(), "Fr O",
+                          Arrays.asList("B BETA III IV I"),
+                          ForkJoinPool.commonPool());
+        Machine T = new Machine();
+        configure(T, "* B BETA III IV I AXLE");
+        String ciphertext = T.convert("FROMHISSHOULDER");
+        List<String> found;
+        try (PrefixIndex index = PrefixIndex.open(file.getPath())) {
+            assertEquals("FRO", index.getPlaintext());
+            found = index.find(ciphertext);
+        }
+        assertTrue(found.contains("* B BETA III IV I AXLE"));
+        for (String config : found) {
+            Machine M = new Machine();
+            configure(M, config);
+            assertEquals(ciphertext.substring(0, 3), M.convert("FRO"));
+        }
+    }
+
+    /** Returns the letters of MSG, which must be upper case, as indices
+     *  in the range 0..25. */
+    private static byte[] standardizeLetters(String msg) {
+        byte[] result = new byte[msg.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Rotor.toIndex(msg.charAt(i));
+        }
+        return result;
+    }
+
     /* JUnit tests for the class Rotor. */
 
     /** Tests getters and setters. */
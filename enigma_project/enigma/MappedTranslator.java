@@ -0,0 +1,60 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** A Translator from one file to another through memory-mapped
+ *  regions of both, so that neither input nor output is copied
+ *  through intermediate buffers.  The output file grows one region at
+ *  a time and is cut back to the exact length of the output at the
+ *  end.
+ *  @author Allen Yu
+ */
+final class MappedTranslator extends Translator {
+
+    /** Size of each mapped region of input or output. */
+    static final long REGION_SIZE = 1L << 28;
+
+    /** A MappedTranslator writing to OUT, which must be open for
+     *  reading and writing. Any previous contents of OUT past its
+     *  output are discarded. */
+    MappedTranslator(FileChannel out) throws IOException {
+        super(map(out, 0), null);
+        _file = out;
+    }
+
+    /** Translate all of IN, region by region, then finish. */
+    void translate(FileChannel in) throws IOException {
+        long size = in.size();
+        for (long pos = 0; pos < size; pos += REGION_SIZE) {
+            translate(in.map(FileChannel.MapMode.READ_ONLY, pos,
+                             Math.min(REGION_SIZE, size - pos)));
+        }
+        finish();
+    }
+
+    @Override
+    ByteBuffer drain(ByteBuffer out) throws IOException {
+        _written += out.position();
+        return map(_file, _written);
+    }
+
+    @Override
+    void complete(ByteBuffer out) throws IOException {
+        _written += out.position();
+        _file.truncate(_written);
+    }
+
+    /** Returns a writable region of FILE starting at byte POS. */
+    private static ByteBuffer map(FileChannel file, long pos)
+        throws IOException {
+        return file.map(FileChannel.MapMode.READ_WRITE, pos, REGION_SIZE);
+    }
+
+    /** The output file. */
+    private final FileChannel _file;
+
+    /** Number of bytes of output in regions already filled. */
+    private long _written;
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.error;
+
+/** A Fitness that scores a text by the sum of the base-10 log
+ *  probabilities of its N-grams (N from 2 to 4), as estimated from a
+ *  table of N-gram counts.  The probabilities are kept in a float[]
+ *  indexed by the code of an N-gram: the letter indices (as for
+ *  Rotor.toIndex) of its letters as the digits of a base-26 number,
+ *  first letter most significant.  N-grams that were never counted
+ *  get a floor probability well below that of the rarest one counted.
+ *  Scoring is a single pass that keeps the code of the last N letters
+ *  as a rolling value and allocates nothing.  An NgramScorer is
+ *  immutable and may be shared between threads.
+ *  @author Allen Yu
+ */
+final class NgramScorer implements Fitness {
+
+    /** The shortest N-grams scored. */
+    static final int MIN_N = 2;
+
+    /** The longest N-grams scored. */
+    static final int MAX_N = 4;
+
+    /** A scorer of N-grams whose code-indexed occurrence counts are
+     *  COUNTS, which has 26^N elements. */
+    NgramScorer(int n, long[] counts) {
+        if (n < MIN_N || n > MAX_N) {
+            throw error("n-grams must have %d to %d letters", MIN_N, MAX_N);
+        }
+        if (counts.length != size(n)) {
+            throw new IllegalArgumentException("wrong number of counts");
+        }
+        _n = n;
+        _modulus = size(n - 1);
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams counted");
+        }
+        _logProbabilities = new float[counts.length];
+        float floor = (float) Math.log10(FLOOR / total);
+        for (int c = 0; c < counts.length; c += 1) {
+            _logProbabilities[c] = counts[c] == 0 ? floor
+                : (float) Math.log10((double) counts[c] / total);
+        }
+    }
+
+    /** Returns 26^N. */
+    private static int size(int n) {
+        int result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= Rotor.ALPHABET_SIZE;
+        }
+        return result;
+    }
+
+    /** Returns a scorer of N-grams counted in TEXT[0 .. LEN-1], a
+     *  sequence of letter indices in the range 0..25. */
+    static NgramScorer train(int n, byte[] text, int len) {
+        long[] counts = new long[size(n)];
+        int modulus = size(n - 1);
+        int code = 0;
+        for (int i = 0; i < len; i += 1) {
+            code = code % modulus * Rotor.ALPHABET_SIZE + text[i];
+            if (i >= n - 1) {
+                counts[code] += 1;
+            }
+        }
+        return new NgramScorer(n, counts);
+    }
+
+    /** Returns a scorer of the N-grams in the table read from INPUT,
+     *  one N-gram per line followed by white space and its count, as in
+     *  "TION 13168375".  Letters may be in either case; blank lines are
+     *  ignored.  All N-grams must have the same length. */
+    static NgramScorer load(Reader input) throws IOException {
+        BufferedReader lines = new BufferedReader(input);
+        Map<Integer, Long> counts = new HashMap<Integer, Long>();
+        int n = 0;
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw error("bad n-gram line: %s", line);
+            }
+            if (n == 0) {
+                n = fields[0].length();
+                if (n < MIN_N || n > MAX_N) {
+                    throw error("n-grams must have %d to %d letters",
+                                MIN_N, MAX_N);
+                }
+            } else if (fields[0].length() != n) {
+                throw error("n-grams of different lengths: %s", line);
+            }
+            int code = 0;
+            for (int i = 0; i < n; i += 1) {
+                int p = Rotor.toIndex(Character.toUpperCase(
+                                          fields[0].charAt(i)));
+                if (p < 0 || p >= Rotor.ALPHABET_SIZE) {
+                    throw error("bad n-gram: %s", fields[0]);
+                }
+                code = code * Rotor.ALPHABET_SIZE + p;
+            }
+            try {
+                counts.merge(code, Long.parseLong(fields[1]), Long::sum);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", fields[1]);
+            }
+        }
+        if (n == 0) {
+            throw error("empty n-gram table");
+        }
+        long[] table = new long[size(n)];
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            table[entry.getKey()] = entry.getValue();
+        }
+        return new NgramScorer(n, table);
+    }
+
+    /** Returns the number of letters in my N-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Returns the log probability of the N-gram with code CODE. */
+    float logProbability(int code) {
+        return _logProbabilities[code];
+    }
+
+    @Override
+    public double score(byte[] text, int start, int len) {
+        float[] table = _logProbabilities;
+        int modulus = _modulus;
+        int end = start + len;
+        int code = 0;
+        int i;
+        for (i = start; i < end && i < start + _n - 1; i += 1) {
+            code = code * Rotor.ALPHABET_SIZE + text[i];
+        }
+        double sum = 0.0;
+        for (; i < end; i += 1) {
+            code = code % modulus * Rotor.ALPHABET_SIZE + text[i];
+            sum += table[code];
+        }
+        return sum;
+    }
+
+    /** The count assumed for N-grams that were never counted. */
+    private static final double FLOOR = 0.01;
+
+    /** Number of letters in my N-grams. */
+    private final int _n;
+
+    /** 26^(N-1): the code of the last N-1 letters is the code of the
+     *  last N modulo this. */
+    private final int _modulus;
+
+    /** Log probabilities, indexed by N-gram code. */
+    private final float[] _logProbabilities;
+}
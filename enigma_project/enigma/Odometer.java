@@ -0,0 +1,155 @@
+package enigma;
+
+/** The stepping behaviour of the three rightmost rotors of a rotor
+ *  order, double stepping included.  Stepping is a function on the
+ *  26^3 states numbered as in SubstitutionTable, so every state runs
+ *  through a short tail into a cycle.  An Odometer records that
+ *  structure, which lets it find the state N key presses ahead of any
+ *  state without pressing N keys.  Odometers are immutable.
+ *  @author Allen Yu
+ */
+final class Odometer {
+
+    /** An Odometer for stepping rotors LEFT, MIDDLE, and RIGHT, from
+     *  left to right. Only the rotors' notches are consulted. */
+    Odometer(Rotor left, Rotor middle, Rotor right) {
+        int n = SubstitutionTable.STATES;
+        _next = new int[n];
+        for (int s = 0; s < n; s += 1) {
+            _next[s] = step(left, middle, right, s);
+        }
+        _tail = new int[n];
+        _index = new int[n];
+        _cycleStart = new int[n];
+        _cycleLength = new int[n];
+        _cycles = new int[n];
+        findCycles();
+    }
+
+    /** Returns the state reached from state S when a key is pressed on
+     *  a machine whose stepping rotors are LEFT, MIDDLE, and RIGHT. */
+    private static int step(Rotor left, Rotor middle, Rotor right, int s) {
+        int a = SubstitutionTable.leftSetting(s),
+            b = SubstitutionTable.middleSetting(s),
+            c = SubstitutionTable.rightSetting(s);
+        boolean notch2 = left.atNotch(a);
+        boolean notch3 = middle.atNotch(b);
+        boolean notch4 = right.atNotch(c);
+        if (notch3 || notch4) {
+            b = Rotor.mod(b + 1);
+        }
+        if (notch3 || (notch4 && notch2)) {
+            a = Rotor.mod(a + 1);
+        }
+        return SubstitutionTable.state(a, b, Rotor.mod(c + 1));
+    }
+
+    /** Fill in _tail, _index, _cycleStart, _cycleLength, and
+     *  _cycles from _next. */
+    private void findCycles() {
+        int n = _next.length;
+        final int unseen = 0, onPath = 1, done = 2;
+        byte[] mark = new byte[n];
+        int[] path = new int[n];
+        int numCycled = 0;
+        for (int s0 = 0; s0 < n; s0 += 1) {
+            int len = 0;
+            int s = s0;
+            while (mark[s] == unseen) {
+                mark[s] = onPath;
+                path[len] = s;
+                len += 1;
+                s = _next[s];
+            }
+            if (mark[s] == onPath) {
+                int start = numCycled;
+                int t = s;
+                do {
+                    _cycles[numCycled] = t;
+                    _index[t] = numCycled;
+                    numCycled += 1;
+                    t = _next[t];
+                } while (t != s);
+                do {
+                    _cycleStart[t] = start;
+                    _cycleLength[t] = numCycled - start;
+                    mark[t] = done;
+                    t = _next[t];
+                } while (t != s);
+            }
+            for (int k = len - 1; k >= 0; k -= 1) {
+                int p = path[k];
+                if (mark[p] != done) {
+                    int q = _next[p];
+                    _tail[p] = _tail[q] + 1;
+                    _cycleStart[p] = _cycleStart[q];
+                    _cycleLength[p] = _cycleLength[q];
+                    mark[p] = done;
+                }
+                _maxTail = Math.max(_maxTail, _tail[p]);
+            }
+        }
+    }
+
+    /** Returns the state following S, after one key press. */
+    int next(int s) {
+        return _next[s];
+    }
+
+    /** Returns my stepping function: element S is next(S).  The result
+     *  must not be changed. */
+    int[] nextTable() {
+        return _next;
+    }
+
+    /** Returns the state N >= 0 key presses after state S. At most
+     *  maxTail() single steps are taken; the rest is arithmetic on
+     *  the cycle that S runs into. */
+    int advance(int s, long n) {
+        assert n >= 0;
+        while (n > 0 && _tail[s] > 0) {
+            s = _next[s];
+            n -= 1;
+        }
+        if (n == 0) {
+            return s;
+        }
+        int start = _cycleStart[s];
+        int offset = (int) ((_index[s] - start + n) % _cycleLength[s]);
+        return _cycles[start + offset];
+    }
+
+    /** Returns the length of the cycle that state S eventually enters,
+     *  which is the period of a machine started in state S. */
+    int period(int s) {
+        return _cycleLength[s];
+    }
+
+    /** Returns the greatest number of key presses any state needs to
+     *  reach its cycle. */
+    int maxTail() {
+        return _maxTail;
+    }
+
+    /** The successor of each state. */
+    private final int[] _next;
+
+    /** Number of steps from each state to its cycle. */
+    private final int[] _tail;
+
+    /** Position in _cycles of each state that lies on a cycle. */
+    private final int[] _index;
+
+    /** Position in _cycles of the cycle each state runs into. */
+    private final int[] _cycleStart;
+
+    /** Length of the cycle each state runs into. */
+    private final int[] _cycleLength;
+
+    /** The states of all cycles, each cycle contiguous and in
+     *  stepping order. */
+    private final int[] _cycles;
+
+    /** The longest tail. */
+    private int _maxTail;
+}
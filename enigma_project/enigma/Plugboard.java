@@ -0,0 +1,113 @@
+package enigma;
+
+import static enigma.EnigmaException.error;
+
+/** A plugboard (Steckerbrett): a set of disjoint pairs of letters, each
+ *  of which is swapped on the way into the rotors and again on the way
+ *  out.  Plugboards are immutable; a Machine's plugboard is folded into
+ *  its compiled SubstitutionTable, so that it costs nothing per
+ *  character in compiled mode.
+ *  @author Allen Yu
+ */
+final class Plugboard {
+
+    /** The plugboard with no pairs. */
+    static final Plugboard NONE = new Plugboard(identity());
+
+    /** A plugboard that sends each letter index P to SWAPS[P], which
+     *  must be an involution of 0..25.  SWAPS is not copied. */
+    private Plugboard(int[] swaps) {
+        _swaps = swaps;
+        StringBuilder pairs = new StringBuilder();
+        for (int p = 0; p < swaps.length; p += 1) {
+            if (swaps[p] > p) {
+                if (pairs.length() > 0) {
+                    pairs.append(' ');
+                }
+                pairs.append(Rotor.toLetter(p))
+                    .append(Rotor.toLetter(swaps[p]));
+            }
+        }
+        _pairs = pairs.toString();
+    }
+
+    /** Returns the identity permutation of letter indices. */
+    private static int[] identity() {
+        int[] result = new int[Rotor.ALPHABET_SIZE];
+        for (int p = 0; p < result.length; p += 1) {
+            result[p] = p;
+        }
+        return result;
+    }
+
+    /** Returns the plugboard whose pairs are PAIRS, each two distinct
+     *  upper-case letters, as in { "AB", "CD" }.  It is an error for a
+     *  letter to appear twice. */
+    static Plugboard parse(String... pairs) {
+        int[] swaps = identity();
+        for (String pair : pairs) {
+            if (pair.length() != 2) {
+                throw error("plugboard pair must have two letters: %s",
+                            pair);
+            }
+            int p = Rotor.toIndex(pair.charAt(0)),
+                q = Rotor.toIndex(pair.charAt(1));
+            if (p < 0 || p >= Rotor.ALPHABET_SIZE
+                || q < 0 || q >= Rotor.ALPHABET_SIZE) {
+                throw error("bad plugboard pair: %s", pair);
+            }
+            if (p == q || swaps[p] != p || swaps[q] != q) {
+                throw error("letter plugged twice: %s", pair);
+            }
+            swaps[p] = q;
+            swaps[q] = p;
+        }
+        return pairs.length == 0 ? NONE : new Plugboard(swaps);
+    }
+
+    /** Returns the plugboard that sends letter index P to SWAPS[P].
+     *  SWAPS must be an involution of 0..25; it is copied. */
+    static Plugboard of(int[] swaps) {
+        for (int p = 0; p < Rotor.ALPHABET_SIZE; p += 1) {
+            if (swaps[swaps[p]] != p) {
+                throw new IllegalArgumentException("not a set of pairs");
+            }
+        }
+        return new Plugboard(swaps.clone());
+    }
+
+    /** Returns the letter index that P (in the range 0..25) is plugged
+     *  to. */
+    int convert(int p) {
+        return _swaps[p];
+    }
+
+    /** Returns true iff I have no pairs. */
+    boolean isEmpty() {
+        return _pairs.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Plugboard
+            && ((Plugboard) obj)._pairs.equals(_pairs);
+    }
+
+    @Override
+    public int hashCode() {
+        return _pairs.hashCode();
+    }
+
+    /** Returns my pairs in alphabetical order, separated by blanks, as
+     *  in a configuration line. */
+    @Override
+    public String toString() {
+        return _pairs;
+    }
+
+    /** Element P is the letter index that P is plugged to. */
+    private final int[] _swaps;
+
+    /** My pairs, as returned by toString. */
+    private final String _pairs;
+}
@@ -0,0 +1,248 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.error;
+
+/** A search for the plugboard of a message whose rotors and initial
+ *  setting are known, by hill climbing: starting from a random
+ *  plugboard, repeatedly make whichever single change of one pair
+ *  (adding, removing, or re-pairing two letters) improves the Fitness
+ *  of the decryption, until none does.  Climbs from several random
+ *  starting plugboards run in parallel, and the best result wins.
+ *  The rotors' contribution to each position of the message is
+ *  compiled once, so trying a plugboard costs two lookups in it and
+ *  two plugboard lookups per letter, and allocates nothing.
+ *  @author Allen Yu
+ */
+final class PlugboardSolver {
+
+    /** Number of pairs in a random starting plugboard. */
+    static final int START_PAIRS = 5;
+
+    /** A solver for CIPHERTEXT (letter indices 0..25) sent with the
+     *  rotors and initial setting of the configuration line CONFIG
+     *  (whose plugboard, if any, is ignored), scoring decryptions with
+     *  a Fitness from FITNESS, which supplies one for each climb. */
+    PlugboardSolver(String config, byte[] ciphertext,
+                    Supplier<Fitness> fitness) {
+        Machine M = new Machine();
+        Main.configure(M, config);
+        M.setPlugboard(Plugboard.NONE);
+        SubstitutionTable table = M.table();
+        _ciphertext = ciphertext;
+        _fitness = fitness;
+        _rotors = new byte[ciphertext.length * Rotor.ALPHABET_SIZE];
+        int s = M.state();
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            s = table.next(s);
+            for (int x = 0; x < Rotor.ALPHABET_SIZE; x += 1) {
+                _rotors[i * Rotor.ALPHABET_SIZE + x] =
+                    (byte) table.convert(s, x);
+            }
+        }
+        StringBuilder line = new StringBuilder("*");
+        for (Rotor rotor : M.getRotors()) {
+            line.append(' ').append(rotor.getType());
+        }
+        line.append(' ').append(M.positionAfter(0));
+        if (!M.getRings().equals("AAAA")) {
+            line.append(' ').append(M.getRings());
+        }
+        _config = line.toString();
+    }
+
+    /** Returns the best plugboard found by RESTARTS climbs run in
+     *  POOL, the Ith of which starts from a plugboard chosen at random
+     *  with seed SEED + I. */
+    Solution solve(int restarts, long seed, ForkJoinPool pool) {
+        return pool.submit(
+            () -> IntStream.range(0, restarts).parallel()
+                  .mapToObj(i -> climb(new SplittableRandom(seed + i)))
+                  .max(Comparator.comparingDouble(Solution::getScore))
+                  .get()).join();
+    }
+
+    /** Returns the result of one climb from a plugboard with random
+     *  pairs chosen by RANDOM. */
+    Solution climb(SplittableRandom random) {
+        Fitness fitness = _fitness.get();
+        byte[] text = new byte[_ciphertext.length];
+        int[] swaps = new int[Rotor.ALPHABET_SIZE];
+        for (int p = 0; p < swaps.length; p += 1) {
+            swaps[p] = p;
+        }
+        for (int k = 0; k < START_PAIRS; k += 1) {
+            int p = random.nextInt(swaps.length),
+                q = random.nextInt(swaps.length);
+            if (swaps[p] == p && swaps[q] == q) {
+                swaps[p] = q;
+                swaps[q] = p;
+            }
+        }
+        int[] saved = new int[swaps.length];
+        double best = score(swaps, text, fitness);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < swaps.length; a += 1) {
+                for (int b = a + 1; b < swaps.length; b += 1) {
+                    System.arraycopy(swaps, 0, saved, 0, swaps.length);
+                    toggle(swaps, a, b);
+                    double score = score(swaps, text, fitness);
+                    if (score > best) {
+                        best = score;
+                        improved = true;
+                    } else {
+                        System.arraycopy(saved, 0, swaps, 0, swaps.length);
+                    }
+                }
+            }
+        }
+        return new Solution(best, _config, Plugboard.of(swaps));
+    }
+
+    /** Change the plugboard SWAPS (as for Plugboard.of) so that if A
+     *  and B were paired they are not, and otherwise they are paired
+     *  with each other after being unplugged from any partners. */
+    private static void toggle(int[] swaps, int a, int b) {
+        if (swaps[a] == b) {
+            swaps[a] = a;
+            swaps[b] = b;
+        } else {
+            swaps[swaps[a]] = swaps[a];
+            swaps[swaps[b]] = swaps[b];
+            swaps[a] = b;
+            swaps[b] = a;
+        }
+    }
+
+    /** Returns the score by FITNESS of my message decrypted with the
+     *  plugboard SWAPS, leaving the decryption in TEXT. */
+    private double score(int[] swaps, byte[] text, Fitness fitness) {
+        byte[] rotors = _rotors;
+        byte[] ciphertext = _ciphertext;
+        for (int i = 0, row = 0; i < text.length;
+             i += 1, row += Rotor.ALPHABET_SIZE) {
+            text[i] = (byte) swaps[rotors[row + swaps[ciphertext[i]]]];
+        }
+        return fitness.score(text, text.length);
+    }
+
+    /** A plugboard found for a configuration, with its score. */
+    static final class Solution {
+
+        /** A solution with the given SCORE for the configuration line
+         *  CONFIG (without plugboard) and PLUGBOARD. */
+        Solution(double score, String config, Plugboard plugboard) {
+            _score = score;
+            _config = config;
+            _plugboard = plugboard;
+        }
+
+        /** Returns my score. */
+        double getScore() {
+            return _score;
+        }
+
+        /** Returns my plugboard. */
+        Plugboard getPlugboard() {
+            return _plugboard;
+        }
+
+        /** Returns my complete configuration line. */
+        String configuration() {
+            return _plugboard.isEmpty() ? _config
+                : _config + " " + _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.6f %s", _score, configuration());
+        }
+
+        /** My score. */
+        private final double _score;
+        /** My configuration line, without plugboard. */
+        private final String _config;
+        /** My plugboard. */
+        private final Plugboard _plugboard;
+    }
+
+    /** Find the plugboard of the ciphertext on the standard input, sent
+     *  with the configuration line given as ARGS[ARGS.length - 1], and
+     *  print it as a score and a complete configuration line.  The other
+     *  ARGS must include --ngrams FILE, the n-gram counts (see
+     *  NgramScorer.load) to score decryptions with, and may include
+     *  --restarts N (default 64), --seed S (default 1), and --threads N
+     *  (default: all processors). */
+    public static void main(String[] args) {
+        int restarts = DEFAULT_RESTARTS;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        NgramScorer scorer = null;
+        try {
+            int i;
+            for (i = 0; i < args.length - 1; i += 1) {
+                if (args[i].equals("--restarts")) {
+                    restarts = Integer.parseInt(args[i += 1]);
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(args[i += 1]);
+                } else if (args[i].equals("--threads")) {
+                    threads = KeySearch.positiveOption(args[i],
+                                                       args[i += 1]);
+                } else if (args[i].equals("--ngrams")) {
+                    try (Reader table = new FileReader(args[i += 1])) {
+                        scorer = NgramScorer.load(table);
+                    }
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            }
+            if (i != args.length - 1 || scorer == null || restarts < 1) {
+                throw error("usage: java enigma.PlugboardSolver --ngrams "
+                            + "FILE [--restarts N] [--seed S] [--threads N] "
+                            + "CONFIGURATION < CIPHERTEXT");
+            }
+            byte[] ciphertext = KeySearch.readLetters(
+                new BufferedReader(new InputStreamReader(System.in)));
+            NgramScorer fitness = scorer;
+            PlugboardSolver solver =
+                new PlugboardSolver(args[i], ciphertext, () -> fitness);
+            System.out.println(solver.solve(restarts, seed,
+                                            new ForkJoinPool(threads)));
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Default number of climbs. */
+    private static final int DEFAULT_RESTARTS = 64;
+
+    /** The message, as letter indices. */
+    private final byte[] _ciphertext;
+
+    /** Supplies each climb's Fitness. */
+    private final Supplier<Fitness> _fitness;
+
+    /** Row I * 26 + X holds the conversion of X by the rotors alone at
+     *  the Ith letter of the message. */
+    private final byte[] _rotors;
+
+    /** The configuration line, with ring settings but without
+     *  plugboard. */
+    private final String _config;
+}
@@ -0,0 +1,370 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.error;
+
+/** A precomputed index, stored in a file, from the first few letters
+ *  of ciphertext to the initial rotor settings that produce them from
+ *  a known plaintext opening.  For each rotor order indexed, the file
+ *  holds a section with a directory of 26^K + 1 offsets, indexed by
+ *  the base-26 code of a K-letter ciphertext prefix, into a list of
+ *  all 26^4 settings (as for Machine.setRotors) sorted by the prefix
+ *  they produce, each packed into three bytes.  Finding the settings
+ *  that yield a prefix is then a lookup in a memory-mapped section.
+ *  @author Allen Yu
+ */
+final class PrefixIndex implements AutoCloseable {
+
+    /** Identifies index files. */
+    static final int MAGIC = 0x454e4958;
+
+    /** The longest plaintext opening that may be indexed. */
+    static final int MAX_LENGTH = 4;
+
+    /** Number of settings of a rotor order (four rotors). */
+    static final int SETTINGS =
+        Rotor.ALPHABET_SIZE * SubstitutionTable.STATES;
+
+    /** Number of bytes in a packed setting. */
+    private static final int ENTRY_SIZE = 3;
+
+    /** Number of fixed header fields (magic, prefix length, number of
+     *  orders, length of the order names). */
+    private static final int HEADER_FIELDS = 4;
+
+    /** The index in FILE, which is opened and mapped one section at a
+     *  time as sections are needed. */
+    private PrefixIndex(FileChannel file) throws IOException {
+        _file = file;
+        ByteBuffer header =
+            ByteBuffer.allocate(HEADER_FIELDS * Integer.BYTES);
+        readFully(file, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw error("not an index file");
+        }
+        _length = header.getInt();
+        int numOrders = header.getInt();
+        int textLength = header.getInt();
+        if (_length < 1 || _length > MAX_LENGTH || numOrders < 0
+            || textLength < 0
+            || textLength > file.size() - header.capacity()) {
+            throw error("corrupt index file");
+        }
+        ByteBuffer text = ByteBuffer.allocate(textLength);
+        readFully(file, text, header.capacity());
+        String[] names = new String(text.array(), StandardCharsets.US_ASCII)
+            .split(";");
+        _plaintext = names[0];
+        _orders = Arrays.copyOfRange(names, 1, names.length);
+        if (_orders.length != numOrders) {
+            throw error("corrupt index file");
+        }
+        _start = header.capacity() + text.capacity();
+        if (file.size() < _start + numOrders * sectionSize(_length)) {
+            throw error("index file is truncated");
+        }
+        _sections = new MappedByteBuffer[numOrders];
+    }
+
+    /** Returns the index stored in the file named NAME, which is
+     *  closed again if it does not hold a valid index. */
+    static PrefixIndex open(String name) throws IOException {
+        FileChannel file =
+            FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+        try {
+            return new PrefixIndex(file);
+        } catch (IOException | RuntimeException excp) {
+            file.close();
+            throw excp;
+        }
+    }
+
+    /** Returns the size of the section of an index of K-letter
+     *  prefixes. */
+    private static long sectionSize(int k) {
+        return (directorySize(k) + 1) * Integer.BYTES
+            + (long) SETTINGS * ENTRY_SIZE;
+    }
+
+    /** Returns the number of distinct K-letter prefixes. */
+    private static int directorySize(int k) {
+        int result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result *= Rotor.ALPHABET_SIZE;
+        }
+        return result;
+    }
+
+    /** Returns the base-26 code of the letter indices TEXT[0 .. K-1]. */
+    private static int code(byte[] text, int k) {
+        int result = 0;
+        for (int i = 0; i < k; i += 1) {
+            result = result * Rotor.ALPHABET_SIZE + text[i];
+        }
+        return result;
+    }
+
+    /** Write to the file named NAME an index of the openings produced
+     *  from the letters of PLAINTEXT (ignoring case and white space) by
+     *  all settings of ORDERS, each a configuration line without its
+     *  '*' and setting, such as "B BETA I II III".  Sections are
+     *  computed in parallel in POOL, and each order's stepping rotors
+     *  are compiled once.  The arguments are checked before NAME is
+     *  written, and NAME is deleted if writing it fails. */
+    static void build(String name, String plaintext, List<String> orders,
+                      ForkJoinPool pool) throws IOException {
+        byte[] opening = KeySearch.readLetters(new StringReader(plaintext));
+        int k = opening.length;
+        if (k < 1 || k > MAX_LENGTH) {
+            throw error("opening must have 1 to %d letters", MAX_LENGTH);
+        }
+        StringBuilder names = new StringBuilder();
+        for (byte p : opening) {
+            names.append(Rotor.toLetter(p));
+        }
+        for (String order : orders) {
+            rotorNames(order);
+            names.append(';').append(order);
+        }
+        byte[] text = names.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_FIELDS * Integer.BYTES
+                                                + text.length);
+        header.putInt(MAGIC).putInt(k).putInt(orders.size())
+            .putInt(text.length).put(text).flip();
+        boolean written = false;
+        try (FileChannel file = FileChannel.open(
+                 Paths.get(name), StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(file, header, 0);
+            long start = header.capacity();
+            pool.submit(() -> {
+                    IntStream.range(0, orders.size())
+                        .parallel().forEach(j -> {
+                                try {
+                                    writeFully(file,
+                                               section(opening, orders.get(j)),
+                                               start + j * sectionSize(k));
+                                } catch (IOException excp) {
+                                    throw new UncheckedIOException(
+                                        excp);
+                                }
+                            });
+                }).join();
+            written = true;
+        } catch (UncheckedIOException excp) {
+            throw excp.getCause();
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(Paths.get(name));
+            }
+        }
+    }
+
+    /** Returns the names of the rotors in the rotor order ORDER, as for
+     *  build.  It is an error if ORDER does not name five rotors that
+     *  may be used together, in that order, in a configuration. */
+    private static String[] rotorNames(String order) {
+        String[] result = order.trim().split(" +");
+        if (result.length != Configuration.NUM_ROTORS) {
+            throw error("bad rotor order: %s", order);
+        }
+        for (int i = 0; i < result.length; i += 1) {
+            Configuration.rotorWiring(result, i);
+        }
+        return result;
+    }
+
+    /** Returns the section of an index for the rotor order ORDER and
+     *  the plaintext letter indices OPENING. */
+    private static ByteBuffer section(byte[] opening, String order) {
+        String[] rotors = rotorNames(order);
+        Scrambler scrambler = new Scrambler(new Rotor(rotors[2]),
+                                            new Rotor(rotors[3]),
+                                            new Rotor(rotors[4]));
+        Odometer odometer = scrambler.odometer();
+        Rotor reflector = new Reflector(rotors[0]);
+        Rotor fixed = new FixedRotor(rotors[1]);
+        int k = opening.length;
+        int[] codes = new int[SETTINGS];
+        int[] directory = new int[directorySize(k) + 1];
+        byte[] prefix = new byte[k];
+        for (int f = 0; f < Rotor.ALPHABET_SIZE; f += 1) {
+            fixed.set(f);
+            int[] reflection = Scrambler.reflection(reflector, fixed);
+            for (int start = 0; start < SubstitutionTable.STATES;
+                 start += 1) {
+                int s = start;
+                for (int i = 0; i < k; i += 1) {
+                    s = odometer.next(s);
+                    prefix[i] = (byte) scrambler.convert(s, reflection,
+                                                         opening[i]);
+                }
+                int c = code(prefix, k);
+                codes[f * SubstitutionTable.STATES + start] = c;
+                directory[c + 1] += 1;
+            }
+        }
+        for (int c = 1; c < directory.length; c += 1) {
+            directory[c] += directory[c - 1];
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) sectionSize(k));
+        result.asIntBuffer().put(directory);
+        int base = directory.length * Integer.BYTES;
+        for (int setting = 0; setting < SETTINGS; setting += 1) {
+            int p = base + ENTRY_SIZE * directory[codes[setting]];
+            directory[codes[setting]] += 1;
+            result.put(p, (byte) (setting >>> 16));
+            result.put(p + 1, (byte) (setting >>> 8));
+            result.put(p + 2, (byte) setting);
+        }
+        return result;
+    }
+
+    /** Returns the configuration lines of every indexed setting that
+     *  converts my opening to a ciphertext beginning with CIPHERTEXT,
+     *  which must have at least as many letters as the opening. */
+    List<String> find(String ciphertext) throws IOException {
+        byte[] letters = KeySearch.readLetters(
+            new StringReader(ciphertext));
+        if (letters.length < _length) {
+            throw error("need at least %d letters of ciphertext", _length);
+        }
+        int c = code(letters, _length);
+        List<String> result = new ArrayList<String>();
+        for (int j = 0; j < _orders.length; j += 1) {
+            MappedByteBuffer section = section(j);
+            int lo = section.getInt(c * Integer.BYTES),
+                hi = section.getInt((c + 1) * Integer.BYTES);
+            int base = (directorySize(_length) + 1) * Integer.BYTES;
+            for (int e = lo; e < hi; e += 1) {
+                int p = base + ENTRY_SIZE * e;
+                int setting = (section.get(p) & 0xff) << 16
+                    | (section.get(p + 1) & 0xff) << 8
+                    | (section.get(p + 2) & 0xff);
+                result.add("* " + _orders[j] + " " + KeySearch.setting(
+                               setting / SubstitutionTable.STATES,
+                               setting % SubstitutionTable.STATES));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the section for order J, mapping it if necessary. */
+    private synchronized MappedByteBuffer section(int j) throws IOException {
+        if (_sections[j] == null) {
+            long size = sectionSize(_length);
+            _sections[j] = _file.map(FileChannel.MapMode.READ_ONLY,
+                                     _start + j * size, size);
+        }
+        return _sections[j];
+    }
+
+    /** Close my file, after which my sections may no longer be used. */
+    @Override
+    public void close() throws IOException {
+        _file.close();
+    }
+
+    /** Returns the plaintext opening that I index. */
+    String getPlaintext() {
+        return _plaintext;
+    }
+
+    /** Read from FILE at POSITION until BUF is full. */
+    private static void readFully(FileChannel file, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (file.read(buf, position + buf.position()) < 0) {
+                throw error("index file is truncated");
+            }
+        }
+    }
+
+    /** Write all of BUF to FILE at POSITION. */
+    private static void writeFully(FileChannel file, ByteBuffer buf,
+                                   long position) throws IOException {
+        while (buf.hasRemaining()) {
+            file.write(buf, position + buf.position());
+        }
+    }
+
+    /** Returns all rotor orders, as for build. */
+    static List<String> allOrders() {
+        List<String> result = new ArrayList<String>();
+        for (String reflector : KeySearch.REFLECTORS) {
+            for (String fixed : KeySearch.FIXED_ROTORS) {
+                for (String[] order : KeySearch.steppingOrders()) {
+                    result.add(String.join(" ", reflector, fixed, order[0],
+                                           order[1], order[2]));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** With ARGS "build FILE OPENING [ORDER ...]", index the given
+     *  rotor orders (default: all of them), each written like
+     *  "B BETA I II III", for the plaintext OPENING into FILE.  With
+     *  ARGS "find FILE CIPHERTEXT", print a configuration line for each
+     *  setting in the index of FILE that produces CIPHERTEXT. */
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 3 && args[0].equals("build")) {
+                List<String> orders = args.length == 3 ? allOrders()
+                    : Arrays.asList(args).subList(3, args.length);
+                build(args[1], args[2].toUpperCase(), orders,
+                      ForkJoinPool.commonPool());
+            } else if (args.length == 3 && args[0].equals("find")) {
+                try (PrefixIndex index = open(args[1])) {
+                    for (String config : index.find(args[2])) {
+                        System.out.println(config);
+                    }
+                }
+            } else {
+                throw error("usage: java enigma.PrefixIndex build FILE "
+                            + "OPENING [ORDER ...] | find FILE CIPHERTEXT");
+            }
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The index file. */
+    private final FileChannel _file;
+
+    /** Number of letters in the indexed opening and prefixes. */
+    private final int _length;
+
+    /** The indexed plaintext opening. */
+    private final String _plaintext;
+
+    /** The indexed rotor orders, as for build. */
+    private final String[] _orders;
+
+    /** Position of the first section in the file. */
+    private final long _start;
+
+    /** Sections mapped so far, by order. */
+    private final MappedByteBuffer[] _sections;
+}
@@ -11,6 +11,12 @@ class Reflector extends FixedRotor {
         super(p);
     }
 
+    /** Constructs a Reflector with the given WIRING, set to the 'A'
+     *  position. */
+    Reflector(Wiring wiring) {
+        super(wiring);
+    }
+
     @Override
     boolean hasInverse() {
         return false;
@@ -7,8 +7,8 @@ class Rotor {
 
     /* Instance variables. */
 
-    /** The rotor type. */
-    private String _type;
+    /** My wiring, shared with every other Rotor of my type. */
+    private final Wiring _wiring;
 
     /** My current setting (index 0..25, with 0 indicating that 'A'
      *  is showing). */
@@ -19,7 +19,16 @@ class Rotor {
     /** Constructs a Rotor and sets the type of Rotor to type P.
      * and default sets the setting to 'A' position.*/
     public Rotor(String p) {
-        _type = p;
+        this(Wiring.forName(p));
+    }
+
+    /** Constructs a Rotor with the given WIRING, set to the 'A'
+     *  position. */
+    Rotor(Wiring wiring) {
+        if (wiring == null) {
+            throw new IllegalArgumentException("unknown rotor type");
+        }
+        _wiring = wiring;
         _setting = 0;
     }
 
@@ -40,7 +49,18 @@ class Rotor {
 
     /** Return the Rotor's type. */
     String getType() {
-        return _type;
+        return _wiring.getName();
+    }
+
+    /** Return the Rotor's ring setting (index 0..25, with 0 indicating
+     *  ring setting 'A'). */
+    int getRing() {
+        return _wiring.getRing();
+    }
+
+    /** Return the Rotor's wiring. */
+    Wiring getWiring() {
+        return _wiring;
     }
 
     /* Methods involving alphabet. */
@@ -89,27 +109,20 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        String[][] perm = PermutationData.ROTOR_SPECS;
-        for (int i = 0; i < perm.length; i += 1) {
-            if (_type.equals(perm[i][0])) {
-                char[] nch = perm[i][3].toCharArray();
-                if (nch.length > 1) {
-                    int[] answer = {toIndex(nch[0]), toIndex(nch[1])};
-                    return (_setting == answer[0] || _setting == answer[1]);
-                } else {
-                    int answer = toIndex(nch[0]);
-                    return (_setting == answer);
-                }
-            }
-        }
-        return false;
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I would be positioned to allow the rotor to my
+     *  left to advance if my setting were SETTING. */
+    boolean atNotch(int setting) {
+        return _wiring.atNotch(setting);
     }
 
     /* Methods involving rotor's inverse capabilites. */
 
     /** Returns true iff this Rotor has a left-to-right inverse. */
     boolean hasInverse() {
-        return true;
+        return _wiring.hasInverse();
     }
 
     /* Methods involving rotor's conversion factors. */
@@ -117,29 +130,13 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..25)
      *  according to my permutation. */
     int convertForward(int p) {
-        String[][] perm = PermutationData.ROTOR_SPECS;
-        for (int i = 0; i < perm.length; i += 1) {
-            if (_type.equals(perm[i][0])) {
-                String str = perm[i][1];
-                char[] perms = str.toCharArray();
-                return Rotor.toIndex(perms[p]);
-            }
-        }
-        return -1;
+        return _wiring.convertForward(p);
     }
 
     /** Return the conversion of E (an integer in the range 0..25)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        String[][] perm = PermutationData.ROTOR_SPECS;
-        for (int i = 0; i < perm.length; i += 1) {
-            if (_type.equals(perm[i][0])) {
-                String str = perm[i][2];
-                char[] perms = str.toCharArray();
-                return Rotor.toIndex(perms[e]);
-            }
-        }
-        return -1;
+        return _wiring.convertBackward(e);
     }
 
     /** Returns the final output of the rotor given an INPUT for the
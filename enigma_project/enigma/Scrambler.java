@@ -0,0 +1,105 @@
+package enigma;
+
+/** The three stepping rotors of a rotor order, compiled for every one
+ *  of their 26^3 states (numbered as in SubstitutionTable): the
+ *  right-to-left pass through all three, the left-to-right pass back,
+ *  and their Odometer.  A Scrambler does not depend on the reflector
+ *  or the non-stepping rotor, so one Scrambler serves all 104
+ *  combinations of those with their settings.  Scramblers are
+ *  immutable and may be shared between threads.
+ *  @author Allen Yu
+ */
+final class Scrambler {
+
+    /** A Scrambler for stepping rotors LEFT, MIDDLE, and RIGHT, from
+     *  left to right. Their settings are ignored and not changed. */
+    Scrambler(Rotor left, Rotor middle, Rotor right) {
+        int n = SubstitutionTable.STATES * Rotor.ALPHABET_SIZE;
+        _forward = new byte[n];
+        _backward = new byte[n];
+        _forwardByLetter = new byte[n];
+        for (int s = 0; s < SubstitutionTable.STATES; s += 1) {
+            int a = SubstitutionTable.leftSetting(s),
+                b = SubstitutionTable.middleSetting(s),
+                c = SubstitutionTable.rightSetting(s);
+            int row = s * Rotor.ALPHABET_SIZE;
+            for (int x = 0; x < Rotor.ALPHABET_SIZE; x += 1) {
+                int y = right.encryptForward(x, c);
+                y = middle.encryptForward(y, b);
+                _forward[row + x] = (byte) left.encryptForward(y, a);
+                _forwardByLetter[x * SubstitutionTable.STATES + s] =
+                    _forward[row + x];
+                y = left.encryptBackward(x, a);
+                y = middle.encryptBackward(y, b);
+                _backward[row + x] = (byte) right.encryptBackward(y, c);
+            }
+        }
+        _odometer = new Odometer(left, middle, right);
+    }
+
+    /** Returns the permutation performed, in their current settings,
+     *  by the non-stepping rotor FIXED, then REFLECTOR, then FIXED
+     *  again on the way back. */
+    static int[] reflection(Rotor reflector, Rotor fixed) {
+        int[] result = new int[Rotor.ALPHABET_SIZE];
+        for (int x = 0; x < result.length; x += 1) {
+            int y = fixed.encryptForward(x, fixed.getSetting());
+            y = reflector.encryptForward(y, reflector.getSetting());
+            result[x] = fixed.encryptBackward(y, fixed.getSetting());
+        }
+        return result;
+    }
+
+    /** Returns the conversion of P by the right-to-left pass through
+     *  the stepping rotors in state S. */
+    int forward(int s, int p) {
+        return _forward[s * Rotor.ALPHABET_SIZE + p];
+    }
+
+    /** Returns the conversion of P by the left-to-right pass through
+     *  the stepping rotors in state S. */
+    int backward(int s, int p) {
+        return _backward[s * Rotor.ALPHABET_SIZE + p];
+    }
+
+    /** Returns the conversion of P by a whole machine whose stepping
+     *  rotors are in state S and whose reflector and non-stepping
+     *  rotor together perform REFLECTION (see reflection). */
+    int convert(int s, int[] reflection, int p) {
+        int row = s * Rotor.ALPHABET_SIZE;
+        return _backward[row + reflection[_forward[row + p]]];
+    }
+
+    /** Returns my right-to-left passes by letter: element
+     *  P * 26^3 + S holds the conversion of P in state S.  The result
+     *  must not be changed. */
+    byte[] forwardByLetter() {
+        return _forwardByLetter;
+    }
+
+    /** Returns my left-to-right passes: row S * 26 + P holds the
+     *  conversion of P in state S.  The result must not be changed. */
+    byte[] backwardTable() {
+        return _backward;
+    }
+
+    /** Returns the Odometer of my rotors. */
+    Odometer odometer() {
+        return _odometer;
+    }
+
+    /** Row S * 26 + P holds the right-to-left conversion of P in
+     *  state S. */
+    private final byte[] _forward;
+
+    /** Row P holds the right-to-left conversions of P in all states,
+     *  in order of state. */
+    private final byte[] _forwardByLetter;
+
+    /** Row S * 26 + P holds the left-to-right conversion of P in
+     *  state S. */
+    private final byte[] _backward;
+
+    /** The stepping behaviour of my rotors. */
+    private final Odometer _odometer;
+}
@@ -0,0 +1,411 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.error;
+
+/** One of several processes that share a long KeySearch through a
+ *  directory.  The key space is divided into numbered work units, one
+ *  for each stepping-rotor order, reflector, and non-stepping rotor.
+ *  The directory holds the job (the ciphertext and search options),
+ *  a claim file for each unit being searched, and a checkpoint file for
+ *  each unit finished, holding that unit's best candidates.  A worker
+ *  claims a unit by creating its claim file, which succeeds for only
+ *  one worker; it keeps its claims alive by touching them, and a claim
+ *  that has not been touched for a while is presumed to belong to a
+ *  dead worker and may be taken over.  Checkpoints are written to a
+ *  temporary file and then renamed into place, so that a checkpoint is
+ *  either complete or absent.  A crash therefore loses only the units
+ *  in progress, and any worker started later resumes the search.
+ *  @author Allen Yu
+ */
+final class SearchWorker {
+
+    /** Number of work units. */
+    static final int UNITS = KeySearch.steppingOrders().size()
+        * KeySearch.REFLECTORS.length * KeySearch.FIXED_ROTORS.length;
+
+    /** Milliseconds between touches of a worker's claims. */
+    static final long HEARTBEAT_MILLIS = 10_000;
+
+    /** Milliseconds after its last touch that a claim is stale. */
+    static final long STALE_MILLIS = 6 * HEARTBEAT_MILLIS;
+
+    /** A worker on the job in directory DIR, which must have been
+     *  created by init. */
+    SearchWorker(Path dir) throws IOException {
+        _dir = dir;
+        Properties job = new Properties();
+        try (Reader input = Files.newBufferedReader(dir.resolve(JOB))) {
+            job.load(input);
+        } catch (NoSuchFileException excp) {
+            throw error("no search job in %s", dir);
+        }
+        _ciphertext = KeySearch.readLetters(
+            new StringReader(job.getProperty("ciphertext", "")));
+        _k = Integer.parseInt(job.getProperty("top", "10"));
+        String ngrams = job.getProperty("ngrams");
+        if (ngrams == null) {
+            _fitness = IndexOfCoincidence::new;
+        } else {
+            NgramScorer scorer;
+            try (Reader table = new FileReader(ngrams)) {
+                scorer = NgramScorer.load(table);
+            }
+            _fitness = () -> scorer;
+        }
+        _id = ManagementFactory.getRuntimeMXBean().getName();
+        _orders = KeySearch.steppingOrders();
+    }
+
+    /** Create in DIR a job to find the K best keys for CIPHERTEXT
+     *  (letter indices 0..25), scored with the n-gram counts in the
+     *  file NGRAMS, or by index of coincidence if NGRAMS is null. */
+    static void init(Path dir, byte[] ciphertext, int k, String ngrams)
+        throws IOException {
+        Files.createDirectories(dir.resolve(CLAIMS));
+        Files.createDirectories(dir.resolve(DONE));
+        Properties job = new Properties();
+        StringBuilder letters = new StringBuilder();
+        for (byte p : ciphertext) {
+            letters.append(Rotor.toLetter(p));
+        }
+        job.setProperty("ciphertext", letters.toString());
+        job.setProperty("top", Integer.toString(k));
+        if (ngrams != null) {
+            job.setProperty("ngrams",
+                            Paths.get(ngrams).toAbsolutePath().toString());
+        }
+        Path temp = Files.createTempFile(dir, JOB, ".tmp");
+        try (Writer output = Files.newBufferedWriter(temp)) {
+            job.store(output, "Enigma key search");
+        }
+        try {
+            Files.createLink(dir.resolve(JOB), temp);
+        } catch (FileAlreadyExistsException excp) {
+            throw error("%s already has a search job", dir);
+        } finally {
+            Files.delete(temp);
+        }
+    }
+
+    /** Returns the path of the claim file of UNIT. */
+    private Path claimFile(int unit) {
+        return _dir.resolve(CLAIMS).resolve(Integer.toString(unit));
+    }
+
+    /** Returns the path of the checkpoint file of UNIT. */
+    private Path checkpointFile(int unit) {
+        return _dir.resolve(DONE).resolve(Integer.toString(unit));
+    }
+
+    /** Returns true iff UNIT has been checkpointed. */
+    boolean isDone(int unit) {
+        return Files.exists(checkpointFile(unit));
+    }
+
+    /** Try to claim UNIT, which must not be done, taking over its claim
+     *  if that is stale.  Returns true iff I now hold it.  A stale claim
+     *  is first renamed aside, and deleted only if it is still the
+     *  claim that was judged stale (the same owner and time); if
+     *  another worker took the unit over in the meantime, its claim is
+     *  put back. */
+    boolean claim(int unit) throws IOException {
+        Path claim = claimFile(unit);
+        try {
+            Files.write(Files.createFile(claim),
+                        _id.getBytes(StandardCharsets.UTF_8));
+        } catch (FileAlreadyExistsException excp) {
+            FileTime touched;
+            byte[] owner;
+            try {
+                touched = Files.getLastModifiedTime(claim);
+                owner = Files.readAllBytes(claim);
+            } catch (NoSuchFileException excp2) {
+                return false;
+            }
+            if (!isStale(touched)) {
+                return false;
+            }
+            Path abandoned = claim.resolveSibling(unit + "." + _id
+                                                  + ".stale");
+            try {
+                Files.move(claim, abandoned,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException excp2) {
+                return false;
+            }
+            if (!touched.equals(Files.getLastModifiedTime(abandoned))
+                || !Arrays.equals(owner, Files.readAllBytes(abandoned))) {
+                try {
+                    Files.createLink(claim, abandoned);
+                } catch (FileAlreadyExistsException excp2) {
+                    Files.delete(abandoned);
+                    return false;
+                }
+                Files.delete(abandoned);
+                return false;
+            }
+            Files.delete(abandoned);
+            return claim(unit);
+        }
+        if (isDone(unit)) {
+            Files.deleteIfExists(claim);
+            return false;
+        }
+        _held.add(unit);
+        return true;
+    }
+
+    /** Returns true iff a claim last TOUCHED then is stale. */
+    private static boolean isStale(FileTime touched) {
+        return System.currentTimeMillis() - touched.toMillis()
+            > STALE_MILLIS;
+    }
+
+    /** Touch the claim files of all the units I hold. */
+    void heartbeat() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (int unit : _held) {
+            try {
+                Files.setLastModifiedTime(claimFile(unit), now);
+            } catch (IOException excp) {
+                System.err.printf("Input error: %s%n", excp.getMessage());
+            }
+        }
+    }
+
+    /** Search UNIT and return its best candidates. */
+    BestCandidates search(int unit) {
+        int numFixed = KeySearch.FIXED_ROTORS.length,
+            numReflectors = KeySearch.REFLECTORS.length;
+        String[] order = _orders.get(unit / (numFixed * numReflectors));
+        String reflector =
+            KeySearch.REFLECTORS[unit / numFixed % numReflectors];
+        String fixed = KeySearch.FIXED_ROTORS[unit % numFixed];
+        Scrambler scrambler = new Scrambler(new Rotor(order[0]),
+                                            new Rotor(order[1]),
+                                            new Rotor(order[2]));
+        return new KeySearch(_ciphertext, _k, _fitness)
+            .search(order, scrambler, reflector, fixed);
+    }
+
+    /** Write BEST as the checkpoint of UNIT, which I hold, and release
+     *  UNIT. */
+    void complete(int unit, BestCandidates best) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (Candidate c : best.sorted()) {
+            lines.add(c.toString());
+        }
+        Path temp = Files.createTempFile(_dir.resolve(DONE), unit + ".",
+                                         ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, checkpointFile(unit),
+                   StandardCopyOption.ATOMIC_MOVE);
+        _held.remove(unit);
+        Files.deleteIfExists(claimFile(unit));
+    }
+
+    /** Search unfinished units with THREADS threads until every unit is
+     *  done or claimed by a live worker.  Returns the number of units
+     *  I searched. */
+    int work(int threads) throws IOException {
+        ScheduledExecutorService heart =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    return t;
+                });
+        heart.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_MILLIS,
+                                  HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        List<Thread> workers = new ArrayList<Thread>();
+        int[] searched = new int[threads];
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t += 1) {
+            final int me = t;
+            Thread worker = new Thread(() -> {
+                    try {
+                        for (int unit = me; unit < UNITS + me; unit += 1) {
+                            int u = unit % UNITS;
+                            if (!isDone(u) && claim(u)) {
+                                complete(u, search(u));
+                                searched[me] += 1;
+                            }
+                        }
+                    } catch (IOException excp) {
+                        throw new UncheckedIOException(excp);
+                    }
+                });
+            worker.setUncaughtExceptionHandler((th, excp) -> {
+                    synchronized (failure) {
+                        failure[0] = excp;
+                    }
+                });
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            heart.shutdownNow();
+        }
+        if (failure[0] instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) failure[0]).getCause();
+        } else if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        }
+        int result = 0;
+        for (int n : searched) {
+            result += n;
+        }
+        return result;
+    }
+
+    /** Returns the number of units checkpointed so far. */
+    int done() {
+        int result = 0;
+        for (int unit = 0; unit < UNITS; unit += 1) {
+            if (isDone(unit)) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the best candidates of all checkpointed units, best
+     *  first. */
+    List<Candidate> results() throws IOException {
+        BestCandidates best = new BestCandidates(_k);
+        for (int unit = 0; unit < UNITS; unit += 1) {
+            if (isDone(unit)) {
+                for (String line
+                         : Files.readAllLines(checkpointFile(unit),
+                                              StandardCharsets.UTF_8)) {
+                    best.add(Candidate.parse(line));
+                }
+            }
+        }
+        return best.sorted();
+    }
+
+    /** With ARGS "init DIR [--top K] [--ngrams FILE]", create a search
+     *  job in DIR for the ciphertext on the standard input.  With ARGS
+     *  "work DIR [--threads N]", search unfinished units of the job in
+     *  DIR.  With ARGS "report DIR", print the best keys found so far,
+     *  as KeySearch does, and the number of units done on the standard
+     *  error. */
+    public static void main(String[] args) {
+        try {
+            if (args.length < 2) {
+                throw error("usage: java enigma.SearchWorker init|work|"
+                            + "report DIR [OPTIONS]");
+            }
+            Path dir = Paths.get(args[1]);
+            int k = 10;
+            int threads = Runtime.getRuntime().availableProcessors();
+            String ngrams = null;
+            for (int i = 2; i < args.length; i += 1) {
+                if (args[i].equals("--top") && i + 1 < args.length) {
+                    k = KeySearch.positiveOption(args[i], args[i += 1]);
+                } else if (args[i].equals("--threads")
+                           && i + 1 < args.length) {
+                    threads = KeySearch.positiveOption(args[i],
+                                                       args[i += 1]);
+                } else if (args[i].equals("--ngrams")
+                           && i + 1 < args.length) {
+                    ngrams = args[i += 1];
+                } else {
+                    throw error("unknown option: %s", args[i]);
+                }
+            }
+            switch (args[0]) {
+            case "init":
+                init(dir, KeySearch.readLetters(
+                         new BufferedReader(
+                             new InputStreamReader(System.in))), k, ngrams);
+                break;
+            case "work":
+                SearchWorker worker = new SearchWorker(dir);
+                System.err.printf("searched %d units%n",
+                                  worker.work(threads));
+                break;
+            case "report":
+                SearchWorker reporter = new SearchWorker(dir);
+                System.err.printf("%d of %d units done%n",
+                                  reporter.done(), UNITS);
+                for (Candidate c : reporter.results()) {
+                    System.out.println(c);
+                }
+                break;
+            default:
+                throw error("unknown command: %s", args[0]);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Input error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Name of the job file. */
+    private static final String JOB = "job";
+
+    /** Name of the directory of claim files. */
+    private static final String CLAIMS = "claims";
+
+    /** Name of the directory of checkpoint files. */
+    private static final String DONE = "done";
+
+    /** The job directory. */
+    private final Path _dir;
+
+    /** The message, as letter indices. */
+    private final byte[] _ciphertext;
+
+    /** Number of keys to keep. */
+    private final int _k;
+
+    /** Supplies the Fitness of each unit. */
+    private final Supplier<Fitness> _fitness;
+
+    /** Identifies this worker in its claim files. */
+    private final String _id;
+
+    /** The stepping-rotor orders, in unit order. */
+    private final List<String[]> _orders;
+
+    /** The units I currently hold. */
+    private final Set<Integer> _held = ConcurrentHashMap.newKeySet();
+}
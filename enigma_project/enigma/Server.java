@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.error;
+
+/** A server for many concurrent, independent Enigma sessions in one
+ *  JVM.  Each connection speaks the same line protocol as the standard
+ *  input of Main: configuration lines beginning with '*', and message
+ *  lines, each answered by one line of 5-letter groups.  Every session
+ *  has its own Machine.  An erroneous line is answered with a line
+ *  beginning "Error: " and leaves the session as it was, rather than
+ *  ending the process.
+ *  @author Allen Yu
+ */
+final class Server {
+
+    /** A Server listening at ADDRESS: a port number on the loopback
+     *  interface, or otherwise the path of a Unix-domain socket.  A
+     *  socket left at that path by an earlier Server is replaced; any
+     *  other existing file is an error. */
+    Server(String address) {
+        _address = address;
+    }
+
+    /** Accept and serve connections until the process is stopped. */
+    void serve() throws IOException {
+        ServerSocketChannel listener;
+        if (_address.matches("\\d+")) {
+            if (_address.length() > MAX_PORT_DIGITS
+                || Integer.parseInt(_address) > MAX_PORT) {
+                throw error("bad port: %s", _address);
+            }
+            listener = ServerSocketChannel.open();
+            listener.bind(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                      Integer.parseInt(_address)));
+        } else {
+            Path path = Paths.get(_address);
+            removeStaleSocket(path);
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            listener.bind(UnixDomainSocketAddress.of(path));
+        }
+        ExecutorService sessions = newExecutor();
+        try {
+            while (true) {
+                SocketChannel connection = listener.accept();
+                sessions.execute(() -> serve(connection));
+            }
+        } finally {
+            listener.close();
+            sessions.shutdown();
+        }
+    }
+
+    /** Delete PATH if it is a socket (or other special file), as left
+     *  behind by an earlier Server.  It is an error if PATH is a
+     *  regular file, directory or link; nothing happens if it does not
+     *  exist. */
+    private static void removeStaleSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                                              LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException excp) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw error("cannot listen at %s: not a socket", path);
+        }
+        Files.delete(path);
+    }
+
+    /** Returns an executor that runs each task in a new virtual thread
+     *  when the running JVM has them, and otherwise in a pooled
+     *  platform thread. */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Conduct one session over CONNECTION, closing it at the end. */
+    private static void serve(SocketChannel connection) {
+        try (SocketChannel channel = connection;
+             BufferedReader input = new BufferedReader(
+                 new InputStreamReader(Channels.newInputStream(channel),
+                                       StandardCharsets.US_ASCII));
+             PrintWriter output = new PrintWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(channel),
+                                        StandardCharsets.US_ASCII))) {
+            Machine M = null;
+            while (true) {
+                String line = input.readLine();
+                if (line == null) {
+                    break;
+                }
+                try {
+                    M = respond(M, line, output);
+                } catch (EnigmaException excp) {
+                    output.printf("Error: %s%n", excp.getMessage());
+                }
+                output.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Handle LINE from a session whose current Machine is M (null
+     *  before its first configuration), writing any response to
+     *  OUTPUT.  Returns the session's Machine after LINE. */
+    static Machine respond(Machine M, String line, PrintWriter output) {
+        if (Main.isConfigurationLine(line)) {
+            Machine result = new Machine();
+            Main.configure(result, line);
+            result.setCompiled(true);
+            return result;
+        } else if (M == null) {
+            throw error("message before first configuration");
+        } else {
+            int state = M.state();
+            try {
+                output.println(Main.groups(
+                    M.convert(Main.standardize(line))));
+            } catch (EnigmaException excp) {
+                M.setState(state);
+                throw excp;
+            }
+            return M;
+        }
+    }
+
+    /** The largest TCP port number. */
+    private static final int MAX_PORT = 65535;
+
+    /** Number of digits in MAX_PORT. */
+    private static final int MAX_PORT_DIGITS = 5;
+
+    /** Where I listen. */
+    private final String _address;
+}
@@ -0,0 +1,242 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+/** Counters of the work done by the enigma package, and the Java Flight
+ *  Recorder events that report it.  Counters are LongAdders, so that
+ *  threads converting concurrently do not contend; they are updated
+ *  once per line or call, not per character.  Once register has been
+ *  called, the counters are readable over JMX as the MBean
+ *  "enigma:type=Stats" and are recorded every second as the JFR event
+ *  enigma.Counters.  The events enigma.Configure and enigma.Compile
+ *  are recorded whenever a flight recording enables them.
+ *  @author Allen Yu
+ */
+final class Stats implements StatsMBean {
+
+    /** Letters converted. */
+    static final LongAdder CHARACTERS = new LongAdder();
+    /** Configurations applied to Machines. */
+    static final LongAdder CONFIGURATIONS = new LongAdder();
+    /** Configuration lines found in the cache. */
+    static final LongAdder CONFIGURATION_HITS = new LongAdder();
+    /** Configuration lines parsed. */
+    static final LongAdder CONFIGURATION_MISSES = new LongAdder();
+    /** Tables found in the cache. */
+    static final LongAdder TABLE_HITS = new LongAdder();
+    /** Tables compiled. */
+    static final LongAdder TABLE_MISSES = new LongAdder();
+    /** Nanoseconds spent compiling tables. */
+    static final LongAdder COMPILE_NANOS = new LongAdder();
+    /** Nanoseconds Main spent applying configuration lines and
+     *  standardizing message lines.  A Translator normalizes each
+     *  byte in the same pass that converts it, so in the --stream and
+     *  --mapped modes only configuration lines count here. */
+    static final LongAdder PARSE_NANOS = new LongAdder();
+    /** Nanoseconds Main spent converting lines. */
+    static final LongAdder CONVERT_NANOS = new LongAdder();
+    /** Nanoseconds Main spent printing lines or writing output
+     *  buffers. */
+    static final LongAdder OUTPUT_NANOS = new LongAdder();
+
+    /** The name under which the counters are registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=Stats";
+
+    /** Not instantiable except by register. */
+    private Stats() {
+    }
+
+    /** Make the counters available through JMX and as a periodic JFR
+     *  event, and start timing the phases of translation.  Only the
+     *  first call has any effect. */
+    static synchronized void register() {
+        if (_registered) {
+            return;
+        }
+        _registered = true;
+        _timing = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new Stats(), new ObjectName(OBJECT_NAME));
+        } catch (JMException excp) {
+            throw new IllegalStateException(excp);
+        }
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+                CountersEvent event = new CountersEvent();
+                event.characters = CHARACTERS.sum();
+                event.configurations = CONFIGURATIONS.sum();
+                event.configurationMisses = CONFIGURATION_MISSES.sum();
+                event.tableMisses = TABLE_MISSES.sum();
+                event.parseTime = PARSE_NANOS.sum();
+                event.convertTime = CONVERT_NANOS.sum();
+                event.outputTime = OUTPUT_NANOS.sum();
+                event.commit();
+            });
+    }
+
+    /** Returns System.nanoTime() once register has been called, and
+     *  otherwise 0, so that the phases of translation are timed only
+     *  when the counters are reported. */
+    static long now() {
+        return _timing ? System.nanoTime() : 0;
+    }
+
+    /** Print a summary of the counters on OUT. */
+    static void report(PrintStream out) {
+        out.printf("characters converted: %d%n", CHARACTERS.sum());
+        out.printf("configurations applied: %d (%d parsed, %d cached)%n",
+                   CONFIGURATIONS.sum(), CONFIGURATION_MISSES.sum(),
+                   CONFIGURATION_HITS.sum());
+        out.printf("tables: %d compiled in %.3f s, %d cached%n",
+                   TABLE_MISSES.sum(), COMPILE_NANOS.sum() * 1e-9,
+                   TABLE_HITS.sum());
+        out.printf("time: parse %.3f s, convert %.3f s, output %.3f s%n",
+                   PARSE_NANOS.sum() * 1e-9, CONVERT_NANOS.sum() * 1e-9,
+                   OUTPUT_NANOS.sum() * 1e-9);
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return CHARACTERS.sum();
+    }
+
+    @Override
+    public long getConfigurationsApplied() {
+        return CONFIGURATIONS.sum();
+    }
+
+    @Override
+    public long getConfigurationCacheHits() {
+        return CONFIGURATION_HITS.sum();
+    }
+
+    @Override
+    public long getConfigurationCacheMisses() {
+        return CONFIGURATION_MISSES.sum();
+    }
+
+    @Override
+    public long getTableCacheHits() {
+        return TABLE_HITS.sum();
+    }
+
+    @Override
+    public long getTableCacheMisses() {
+        return TABLE_MISSES.sum();
+    }
+
+    @Override
+    public long getCompileNanos() {
+        return COMPILE_NANOS.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return PARSE_NANOS.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return CONVERT_NANOS.sum();
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return OUTPUT_NANOS.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[] {
+                CHARACTERS, CONFIGURATIONS, CONFIGURATION_HITS,
+                CONFIGURATION_MISSES, TABLE_HITS, TABLE_MISSES,
+                COMPILE_NANOS, PARSE_NANOS, CONVERT_NANOS, OUTPUT_NANOS }) {
+            counter.reset();
+        }
+    }
+
+    /** A configuration line applied to a Machine. */
+    @Name("enigma.Configure")
+    @Label("Enigma Configuration")
+    @Category("Enigma")
+    static final class ConfigureEvent extends Event {
+        /** The configuration line. */
+        @Label("Configuration")
+        String configuration;
+
+        /** Whether the line was already parsed. */
+        @Label("Cached")
+        boolean cached;
+    }
+
+    /** The compilation of a SubstitutionTable. */
+    @Name("enigma.Compile")
+    @Label("Enigma Table Compilation")
+    @Category("Enigma")
+    static final class CompileEvent extends Event {
+        /** The key of the table. */
+        @Label("Table")
+        String key;
+    }
+
+    /** A snapshot of the counters. */
+    @Name("enigma.Counters")
+    @Label("Enigma Counters")
+    @Category("Enigma")
+    @Description("Cumulative counts of the enigma package")
+    @Period("1 s")
+    @Enabled(true)
+    static final class CountersEvent extends Event {
+        /** Letters converted. */
+        @Label("Characters Converted")
+        long characters;
+
+        /** Configurations applied. */
+        @Label("Configurations Applied")
+        long configurations;
+
+        /** Configuration lines parsed. */
+        @Label("Configurations Parsed")
+        long configurationMisses;
+
+        /** Tables compiled. */
+        @Label("Tables Compiled")
+        long tableMisses;
+
+        /** Time spent by Main reading and standardizing lines. */
+        @Label("Parse Time")
+        @Timespan
+        long parseTime;
+
+        /** Time spent by Main converting lines. */
+        @Label("Convert Time")
+        @Timespan
+        long convertTime;
+
+        /** Time spent by Main printing lines. */
+        @Label("Output Time")
+        @Timespan
+        long outputTime;
+    }
+
+    /** True iff register has been called. */
+    private static boolean _registered;
+
+    /** True iff now reads the clock. */
+    private static volatile boolean _timing;
+}
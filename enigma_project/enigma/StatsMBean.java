@@ -0,0 +1,42 @@
+package enigma;
+
+/** The management interface of Stats, through which JMX clients read
+ *  the counters of the enigma package.  Times are in nanoseconds.
+ *  @author Allen Yu
+ */
+public interface StatsMBean {
+
+    /** Returns the number of letters converted. */
+    long getCharactersConverted();
+
+    /** Returns the number of configurations applied to Machines. */
+    long getConfigurationsApplied();
+
+    /** Returns the number of configuration lines found already parsed. */
+    long getConfigurationCacheHits();
+
+    /** Returns the number of configuration lines parsed. */
+    long getConfigurationCacheMisses();
+
+    /** Returns the number of compiled tables found already compiled. */
+    long getTableCacheHits();
+
+    /** Returns the number of tables compiled. */
+    long getTableCacheMisses();
+
+    /** Returns the time spent compiling tables. */
+    long getCompileNanos();
+
+    /** Returns the time Main spent reading configuration lines and
+     *  standardizing message lines. */
+    long getParseNanos();
+
+    /** Returns the time Main spent converting message lines. */
+    long getConvertNanos();
+
+    /** Returns the time Main spent printing converted lines. */
+    long getOutputNanos();
+
+    /** Set all counters to zero. */
+    void reset();
+}
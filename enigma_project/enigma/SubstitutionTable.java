@@ -0,0 +1,144 @@
+package enigma;
+
+/** The complete substitution performed by a particular rotor order,
+ *  compiled for every position that its stepping rotors can reach.
+ *  Only the three rightmost rotors of a Machine step, so a table holds
+ *  26^3 rows of 26 letters each; the reflector, the non-stepping
+ *  rotor, and the plugboard are folded into every row.  Tables are
+ *  immutable once built and may be shared freely between Machines.
+ *  @author Allen Yu
+ */
+final class SubstitutionTable {
+
+    /** Number of distinct positions of the three stepping rotors. */
+    static final int STATES =
+        Rotor.ALPHABET_SIZE * Rotor.ALPHABET_SIZE * Rotor.ALPHABET_SIZE;
+
+    /** Number of rotors in a Machine. */
+    private static final int NUM_ROTORS = 5;
+
+    /** A table for the rotor order and non-stepping settings of
+     *  ROTORS, ordered from left to right as in a Machine, and for
+     *  PLUGBOARD.  The settings of ROTORS are not changed. */
+    SubstitutionTable(Rotor[] rotors, Plugboard plugboard) {
+        this(rotors, plugboard,
+             new Scrambler(rotors[2], rotors[3], rotors[4]));
+    }
+
+    /** A table for the rotor order and non-stepping settings of
+     *  ROTORS, whose stepping rotors have been compiled into
+     *  SCRAMBLER, and for PLUGBOARD. */
+    SubstitutionTable(Rotor[] rotors, Plugboard plugboard,
+                      Scrambler scrambler) {
+        _key = key(rotors, plugboard);
+        _plugboard = plugboard;
+        _wirings = new Wiring[NUM_ROTORS];
+        for (int i = 0; i < NUM_ROTORS; i += 1) {
+            _wirings[i] = rotors[i].getWiring();
+        }
+        _reflectorSetting = rotors[0].getSetting();
+        _fixedSetting = rotors[1].getSetting();
+        _table = new byte[STATES * Rotor.ALPHABET_SIZE];
+        int[] reflection = Scrambler.reflection(rotors[0], rotors[1]);
+        for (int s = 0; s < STATES; s += 1) {
+            int row = s * Rotor.ALPHABET_SIZE;
+            for (int x = 0; x < Rotor.ALPHABET_SIZE; x += 1) {
+                _table[row + x] = (byte) plugboard.convert(
+                    scrambler.convert(s, reflection, plugboard.convert(x)));
+            }
+        }
+        _odometer = scrambler.odometer();
+    }
+
+    /** Returns the state in which the stepping rotors have settings A,
+     *  B, and C, from left to right. */
+    static int state(int a, int b, int c) {
+        return (a * Rotor.ALPHABET_SIZE + b) * Rotor.ALPHABET_SIZE + c;
+    }
+
+    /** Returns the setting of the leftmost stepping rotor in state S. */
+    static int leftSetting(int s) {
+        return s / (Rotor.ALPHABET_SIZE * Rotor.ALPHABET_SIZE);
+    }
+
+    /** Returns the setting of the middle stepping rotor in state S. */
+    static int middleSetting(int s) {
+        return (s / Rotor.ALPHABET_SIZE) % Rotor.ALPHABET_SIZE;
+    }
+
+    /** Returns the setting of the rightmost stepping rotor in state S. */
+    static int rightSetting(int s) {
+        return s % Rotor.ALPHABET_SIZE;
+    }
+
+    /** Returns the state following S, after one key press. */
+    int next(int s) {
+        return _odometer.next(s);
+    }
+
+    /** Returns the Odometer describing my stepping rotors. */
+    Odometer odometer() {
+        return _odometer;
+    }
+
+    /** Returns the conversion of P (an integer in the range 0..25) by
+     *  the whole machine in state S. */
+    int convert(int s, int p) {
+        return _table[s * Rotor.ALPHABET_SIZE + p];
+    }
+
+    /** Returns the key identifying the rotor order, ring settings, and
+     *  non-stepping settings of ROTORS together with PLUGBOARD. */
+    static String key(Rotor[] rotors, Plugboard plugboard) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < NUM_ROTORS; i += 1) {
+            result.append(rotors[i].getWiring()).append(' ');
+        }
+        result.append(Rotor.toLetter(rotors[0].getSetting()));
+        result.append(Rotor.toLetter(rotors[1].getSetting()));
+        if (!plugboard.isEmpty()) {
+            result.append(' ').append(plugboard);
+        }
+        return result.toString();
+    }
+
+    /** Returns true iff I was compiled for the rotor order and
+     *  non-stepping settings of ROTORS and for PLUGBOARD. */
+    boolean matches(Rotor[] rotors, Plugboard plugboard) {
+        if (rotors[0].getSetting() != _reflectorSetting
+            || rotors[1].getSetting() != _fixedSetting
+            || !_plugboard.equals(plugboard)) {
+            return false;
+        }
+        for (int i = 0; i < NUM_ROTORS; i += 1) {
+            if (_wirings[i] != rotors[i].getWiring()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns my key. */
+    String getKey() {
+        return _key;
+    }
+
+    /** The key identifying my rotor order, non-stepping settings, and
+     *  plugboard. */
+    private final String _key;
+
+    /** My plugboard. */
+    private final Plugboard _plugboard;
+
+    /** The wirings of my rotors, from left to right. */
+    private final Wiring[] _wirings;
+
+    /** The settings of my reflector and non-stepping rotor. */
+    private final int _reflectorSetting, _fixedSetting;
+
+    /** Row S * 26 + P holds the conversion of P in state S. */
+    private final byte[] _table;
+
+    /** The stepping behaviour of my rotors. */
+    private final Odometer _odometer;
+}
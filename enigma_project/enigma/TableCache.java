@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of SubstitutionTables, so that
+ *  the many messages sent under one daily key compile their table only
+ *  once.
+ *  @author Allen Yu
+ */
+final class TableCache {
+
+    /** Maximum number of tables retained. Each table occupies roughly
+     *  half a megabyte. */
+    static final int CAPACITY = 32;
+
+    /** Not instantiable. */
+    private TableCache() {
+    }
+
+    /** Returns the SubstitutionTable for the rotor order and
+     *  non-stepping settings of ROTORS and for PLUGBOARD, compiling it
+     *  if needed. */
+    static SubstitutionTable get(Rotor[] rotors, Plugboard plugboard) {
+        String key = SubstitutionTable.key(rotors, plugboard);
+        synchronized (TABLES) {
+            SubstitutionTable table = TABLES.get(key);
+            if (table != null) {
+                Stats.TABLE_HITS.increment();
+                return table;
+            }
+        }
+        Stats.CompileEvent event = new Stats.CompileEvent();
+        event.begin();
+        long start = System.nanoTime();
+        SubstitutionTable table = new SubstitutionTable(rotors, plugboard);
+        Stats.COMPILE_NANOS.add(System.nanoTime() - start);
+        Stats.TABLE_MISSES.increment();
+        if (event.shouldCommit()) {
+            event.key = key;
+            event.commit();
+        }
+        synchronized (TABLES) {
+            TABLES.put(key, table);
+        }
+        return table;
+    }
+
+    /** Returns the cached SubstitutionTable for the rotor order and
+     *  non-stepping settings of ROTORS and for PLUGBOARD, or null if
+     *  there is none. */
+    static SubstitutionTable peek(Rotor[] rotors, Plugboard plugboard) {
+        String key = SubstitutionTable.key(rotors, plugboard);
+        SubstitutionTable table;
+        synchronized (TABLES) {
+            table = TABLES.get(key);
+        }
+        if (table != null) {
+            Stats.TABLE_HITS.increment();
+        }
+        return table;
+    }
+
+    /** Discards all cached tables. */
+    static void clear() {
+        synchronized (TABLES) {
+            TABLES.clear();
+        }
+    }
+
+    /** Returns the number of tables currently cached. */
+    static int size() {
+        synchronized (TABLES) {
+            return TABLES.size();
+        }
+    }
+
+    /** Cached tables, in order of last use. */
+    private static final Map<String, SubstitutionTable> TABLES =
+        new LinkedHashMap<String, SubstitutionTable>(CAPACITY, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, SubstitutionTable> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+}
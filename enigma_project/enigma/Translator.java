@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A one-pass translator of Enigma input, as read by Main, into the
+ *  corresponding output.  Input arrives in arbitrary chunks of ASCII
+ *  bytes; each byte is examined once, normalized, converted through
+ *  the compiled SubstitutionTable of the current configuration, and
+ *  placed in its 5-letter group in an output buffer.  As in a Machine
+ *  in compiled mode, a configuration whose table is not yet compiled
+ *  is converted rotor by rotor until Machine.COMPILE_AFTER letters
+ *  have been converted with it.  Configuration lines are handled as
+ *  they are met.  Apart from configuration lines, nothing is
+ *  allocated per line or per character.  Time spent configuring,
+ *  converting and writing output is added to Stats.
+ *  @author Allen Yu
+ */
+class Translator {
+
+    /** Default size of input and output buffers. */
+    static final int BUFFER_SIZE = 1 << 22;
+
+    /** Number of letters in an output group. */
+    private static final int GROUP = 5;
+
+    /** A Translator that accumulates output in OUT and writes it to
+     *  CHANNEL whenever OUT fills. */
+    Translator(ByteBuffer out, WritableByteChannel channel) {
+        _out = out;
+        _channel = channel;
+    }
+
+    /** Translate everything readable from IN, using BUF as the input
+     *  buffer, then finish. */
+    void translate(ReadableByteChannel in, ByteBuffer buf)
+        throws IOException {
+        buf.clear();
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            translate(buf);
+            buf.clear();
+        }
+        finish();
+    }
+
+    /** Translate the bytes remaining in IN, which may end anywhere
+     *  within a line, leaving IN's position at its limit. */
+    void translate(ByteBuffer in) throws IOException {
+        long start = Stats.now();
+        _otherNanos = 0;
+        int lim = in.limit();
+        for (int i = in.position(); i < lim; i += 1) {
+            int b = in.get(i) & BYTE_MASK;
+            if (b == '\n' && _pendingCR) {
+                _pendingCR = false;
+            } else if (b == '\n' || b == '\r') {
+                _pendingCR = b == '\r';
+                endLine();
+            } else if (_config != null) {
+                _pendingCR = false;
+                _config.append((char) b);
+            } else {
+                _pendingCR = false;
+                if (_atLineStart) {
+                    _atLineStart = false;
+                    if (b == '*') {
+                        _config = new StringBuilder("*");
+                        continue;
+                    } else if (_machine == null) {
+                        error("message before first configuration");
+                    }
+                }
+                if (b != ' ') {
+                    putLetter(b);
+                }
+            }
+        }
+        in.position(lim);
+        Stats.CONVERT_NANOS.add(Stats.now() - start - _otherNanos);
+    }
+
+    /** Complete any unterminated last line and write all pending
+     *  output. */
+    void finish() throws IOException {
+        if (!_atLineStart || _config != null) {
+            endLine();
+        }
+        timedComplete(_out);
+    }
+
+    /** Convert the letter B (in either case) and append it to the
+     *  current output line. */
+    private void putLetter(int b) throws IOException {
+        int p = (b | LOWER_CASE) - 'a';
+        if (p < 0 || p >= Rotor.ALPHABET_SIZE) {
+            error("not a letter: '%c'", (char) b);
+        }
+        if (_out.remaining() < 2) {
+            _out = timedDrain(_out);
+        }
+        if (_groupSize == GROUP) {
+            _out.put((byte) ' ');
+            _groupSize = 0;
+        }
+        if (_table != null) {
+            _state = _table.next(_state);
+            _out.put((byte) Rotor.toLetter(_table.convert(_state, p)));
+        } else {
+            _out.put((byte) Rotor.toLetter(_machine.convertIndex(p)));
+            _uncompiled += 1;
+            if (_uncompiled == Machine.COMPILE_AFTER) {
+                _table = _machine.table();
+                _state = _machine.state();
+            }
+        }
+        _groupSize += 1;
+        _converted += 1;
+    }
+
+    /** Process the end of the current line. */
+    private void endLine() throws IOException {
+        if (_config != null) {
+            configure(_config.toString());
+            _config = null;
+        } else if (_machine == null) {
+            error("message before first configuration");
+        } else {
+            if (!_out.hasRemaining()) {
+                _out = timedDrain(_out);
+            }
+            _out.put((byte) '\n');
+            Stats.CHARACTERS.add(_converted);
+            _converted = 0;
+        }
+        _atLineStart = true;
+        _groupSize = 0;
+    }
+
+    /** Switch to the configuration given by the configuration line
+     *  LINE.  If LINE is erroneous, write all pending output before
+     *  throwing the EnigmaException. */
+    private void configure(String line) throws IOException {
+        Machine M = _machine == null ? new Machine() : _machine;
+        long start = Stats.now();
+        try {
+            Main.configure(M, line);
+        } catch (EnigmaException excp) {
+            timedComplete(_out);
+            throw excp;
+        }
+        addTime(Stats.PARSE_NANOS, start);
+        _machine = M;
+        _table = M.cachedTable();
+        _state = M.state();
+        _uncompiled = 0;
+    }
+
+    /** Write all pending output, including any part of the current
+     *  line already converted, then throw an EnigmaException whose
+     *  message is formatted from FORMAT and ARGS as for printf. */
+    private void error(String format, Object... args) throws IOException {
+        timedComplete(_out);
+        throw EnigmaException.error(format, args);
+    }
+
+    /** Returns drain(OUT), adding the time taken to
+     *  Stats.OUTPUT_NANOS. */
+    private ByteBuffer timedDrain(ByteBuffer out) throws IOException {
+        long start = Stats.now();
+        ByteBuffer result = drain(out);
+        addTime(Stats.OUTPUT_NANOS, start);
+        return result;
+    }
+
+    /** Complete OUT, as for complete, adding the time taken to
+     *  Stats.OUTPUT_NANOS. */
+    private void timedComplete(ByteBuffer out) throws IOException {
+        long start = Stats.now();
+        complete(out);
+        addTime(Stats.OUTPUT_NANOS, start);
+    }
+
+    /** Add the time since START, as given by Stats.now, to COUNTER,
+     *  and leave it out of the conversion time of the current call
+     *  of translate. */
+    private void addTime(LongAdder counter, long start) {
+        long time = Stats.now() - start;
+        counter.add(time);
+        _otherNanos += time;
+    }
+
+    /** Write the contents of OUT, which holds output from its start to
+     *  its position, and return a buffer with room for more.  By
+     *  default, OUT is written to my channel and reused. */
+    ByteBuffer drain(ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            _channel.write(out);
+        }
+        out.clear();
+        return out;
+    }
+
+    /** Write the contents of OUT, as for drain, when no more output
+     *  will follow. */
+    void complete(ByteBuffer out) throws IOException {
+        drain(out);
+    }
+
+    /** Mask selecting the low-order eight bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Bit that distinguishes an ASCII lower-case letter from its
+     *  upper-case counterpart. */
+    private static final int LOWER_CASE = 0x20;
+
+    /** Output not yet written. */
+    private ByteBuffer _out;
+
+    /** Where output is written. */
+    private final WritableByteChannel _channel;
+
+    /** The machine holding the current configuration, or null before
+     *  the first configuration line. */
+    private Machine _machine;
+
+    /** The table of the current configuration, or null if it is not yet
+     *  compiled. */
+    private SubstitutionTable _table;
+
+    /** Number of letters converted by _machine since the last
+     *  configuration line. */
+    private int _uncompiled;
+
+    /** The current state of the stepping rotors, when converting with
+     *  _table. */
+    private int _state;
+
+    /** The text so far of the configuration line being read, or null
+     *  if not reading one. */
+    private StringBuilder _config;
+
+    /** True iff nothing of the current line has been read. */
+    private boolean _atLineStart = true;
+
+    /** True iff the last byte read was a carriage return, so that a
+     *  following newline does not end another line. */
+    private boolean _pendingCR;
+
+    /** Number of letters in the last output group of the line. */
+    private int _groupSize;
+
+    /** The number of letters converted on the current line, added to
+     *  Stats.CHARACTERS at its end. */
+    private int _converted;
+
+    /** Nanoseconds spent configuring and writing output during the
+     *  current call of translate. */
+    private long _otherNanos;
+}
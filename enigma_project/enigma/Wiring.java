@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.HashMap;
+
+/** The wiring of one type of rotor or reflector, compiled from
+ *  PermutationData into lookup tables.  Wirings are immutable, and
+ *  there is exactly one for each type and ring setting, shared by every
+ *  Rotor of that type and ring setting in every Machine; a Rotor adds
+ *  only its own setting.  A ring setting turns the wiring relative to
+ *  the letters on the ring, and is folded into the tables of its
+ *  Wiring, so that it costs nothing to convert with.  Notches are on
+ *  the ring, so they stay with the letters and are the same for every
+ *  ring setting.
+ *  @author Allen Yu
+ */
+final class Wiring {
+
+    /** The roles a rotor may play in a Machine. */
+    enum Kind {
+        /** The leftmost rotor, which reflects and does not move. */
+        REFLECTOR,
+        /** The second rotor, which has a setting but never steps. */
+        FIXED,
+        /** The three rightmost rotors, which step. */
+        STEPPING
+    }
+
+    /** A Wiring compiled from SPEC, an entry of
+     *  PermutationData.ROTOR_SPECS. */
+    private Wiring(String[] spec) {
+        _name = spec[0];
+        _forward = compile(spec[1]);
+        _backward = spec.length > 2 ? compile(spec[2]) : null;
+        int notches = 0;
+        if (spec.length > 3) {
+            for (char c : spec[3].toCharArray()) {
+                notches |= 1 << Rotor.toIndex(c);
+            }
+        }
+        _notches = notches;
+        _kind = _backward == null ? Kind.REFLECTOR
+            : spec.length > 3 ? Kind.STEPPING : Kind.FIXED;
+        _ring = 0;
+        _ringed = new Wiring[Rotor.ALPHABET_SIZE];
+        _ringed[0] = this;
+        for (int r = 1; r < _ringed.length; r += 1) {
+            _ringed[r] = new Wiring(this, r);
+        }
+    }
+
+    /** The Wiring BASE with ring setting RING. */
+    private Wiring(Wiring base, int ring) {
+        _name = base._name;
+        _forward = ringed(base._forward, ring);
+        _backward = ringed(base._backward, ring);
+        _notches = base._notches;
+        _kind = base._kind;
+        _ring = ring;
+        _ringed = base._ringed;
+    }
+
+    /** Returns the permutation TABLE turned by RING positions, or null
+     *  if TABLE is null. */
+    private static int[] ringed(int[] table, int ring) {
+        if (table == null) {
+            return null;
+        }
+        int[] result = new int[table.length];
+        for (int x = 0; x < result.length; x += 1) {
+            result[x] = Rotor.mod(table[Rotor.mod(x - ring)] + ring);
+        }
+        return result;
+    }
+
+    /** Returns the permutation described by the string of letters
+     *  WIRING as an array of indices. */
+    private static int[] compile(String wiring) {
+        int[] table = new int[wiring.length()];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = Rotor.toIndex(wiring.charAt(i));
+        }
+        return table;
+    }
+
+    /** Returns the Wiring of the rotor or reflector named NAME, or
+     *  null if there is none. */
+    static Wiring forName(String name) {
+        return WIRINGS.get(name);
+    }
+
+    /** Returns the Wiring of my type with ring setting RING (index
+     *  0..25, with 0 indicating ring setting 'A'). */
+    Wiring withRing(int ring) {
+        return _ringed[ring];
+    }
+
+    /** Returns the role that a rotor wired as I am plays. */
+    Kind getKind() {
+        return _kind;
+    }
+
+    /** Returns my ring setting. */
+    int getRing() {
+        return _ring;
+    }
+
+    /** Returns my name, as given in PermutationData. */
+    String getName() {
+        return _name;
+    }
+
+    /** Returns true iff I have a left-to-right inverse. */
+    boolean hasInverse() {
+        return _backward != null;
+    }
+
+    /** Returns true iff a rotor wired as I am is positioned to allow the
+     *  rotor to its left to advance when its setting is SETTING. */
+    boolean atNotch(int setting) {
+        return (_notches & (1 << setting)) != 0;
+    }
+
+    /** Return the conversion of P (an integer in the range 0..25)
+     *  according to my permutation. */
+    int convertForward(int p) {
+        return _forward[p];
+    }
+
+    /** Return the conversion of E (an integer in the range 0..25)
+     *  according to the inverse of my permutation. */
+    int convertBackward(int e) {
+        return _backward[e];
+    }
+
+    /** Returns my name, followed by my ring setting if that is not
+     *  'A', as in "IV/K". */
+    @Override
+    public String toString() {
+        return _ring == 0 ? _name : _name + "/" + Rotor.toLetter(_ring);
+    }
+
+    /** My name. */
+    private final String _name;
+
+    /** My right-to-left permutation. */
+    private final int[] _forward;
+
+    /** My left-to-right permutation, or null if I have none. */
+    private final int[] _backward;
+
+    /** Bit K is set iff I am at a notch at setting K. */
+    private final int _notches;
+
+    /** My role. */
+    private final Kind _kind;
+
+    /** My ring setting. */
+    private final int _ring;
+
+    /** The Wirings of my type, by ring setting. */
+    private final Wiring[] _ringed;
+
+    /** All Wirings, by name. */
+    private static final HashMap<String, Wiring> WIRINGS =
+        new HashMap<String, Wiring>();
+
+    static {
+        for (String[] spec : PermutationData.ROTOR_SPECS) {
+            WIRINGS.put(spec[0], new Wiring(spec));
+        }
+    }
+}
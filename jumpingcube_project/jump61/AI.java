@@ -1,8 +1,7 @@
 package jump61;
 
-import java.util.ArrayList;
-
 import static jump61.Color.*;
+import static jump61.TranspositionTable.*;
 
 /** An automated Player.
  *  @author Allen Yu
@@ -19,95 +18,210 @@ class AI extends Player {
     @Override
     void makeMove() {
         Game game = getGame();
-        Board r = getBoard();
-        Board b = new MutableBoard(r);
-        ArrayList<Integer> moves = new ArrayList<Integer>();
-        int depth = 4;
-        minmax(getColor(), b, depth, Integer.MAX_VALUE, moves);
-        int pos = 0;
-        if (!moves.isEmpty()) {
-            pos = moves.get(game.randInt(moves.size()));
-        } else {
-            for (int i = 1; i < b.size() + 1; i++) {
-                for (int c = 1; c < b.size() + 1; c++) {
-                    if (b.isLegal(getColor(), i, c)) {
-                        pos = b.sqNum(i, c);
-                        break;
-                    }
-                }
-            }
-        }
+        MutableBoard b = new MutableBoard(getBoard());
+        _corners = findCorners(b);
+        _sides = findSides(b);
+        int pos = search(getColor(), b, game.getTimeBudget(),
+                         game.getNodeBudget());
         game.makeMove(pos);
         game.message("%s moves %d %d.%n", getColorString(getColor()),
                 b.row(pos), b.col(pos));
     }
 
-    /** Return the minimum of CUTOFF and the minmax value of board B
-     *  (which must be mutable) for player P to a search depth of D
-     *  (where D == 0 denotes evaluating just the next move).
-     *  If MOVES is not null and CUTOFF is not exceeded, set MOVES to
-     *  a list of all highest-scoring moves for P; clear it if
-     *  non-null and CUTOFF is exceeded. the contents of B are
-     *  invariant over this call. */
-    private int minmax(Color p, Board b, int d, int cutoff,
-                       ArrayList<Integer> moves) {
-        if (moves == null) {
-            moves = new ArrayList<Integer>();
+    /** Returns the best move for player P on board B, found by
+     *  successively deeper alpha-beta searches until MILLIS
+     *  milliseconds have passed or NODES positions have been visited
+     *  (no limit if 0), until a win or loss is certain, or until
+     *  MAX_DEPTH.  The search to depth 1 always completes; the move
+     *  returned is the best of the last search to complete.  The
+     *  legal moves start in random order, so that equally good moves
+     *  are chosen at random, and after each depth the best so far is
+     *  tried first.  The contents of B are invariant over this call. */
+    private int search(Color p, MutableBoard b, long millis, long nodes) {
+        int numMoves = 0;
+        int[] moves = new int[b.size() * b.size()];
+        for (int i = 0; i < moves.length; i++) {
+            if (b.isLegal(p, i)) {
+                int k = getGame().randInt(numMoves + 1);
+                moves[numMoves] = moves[k];
+                moves[k] = i;
+                numMoves += 1;
+            }
+        }
+        _deadline = System.nanoTime() + millis * NANOS_PER_MILLI;
+        _nodeLimit = nodes == 0 ? Long.MAX_VALUE : nodes;
+        _nodes = 0;
+        _completedDepth = 0;
+        _stopped = false;
+        int best = moves[0];
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            int alpha = -INFINITY;
+            int bestAtDepth = 0;
+            for (int k = 0; k < numMoves && !_stopped; k++) {
+                b.addSpot(p, moves[k]);
+                int value;
+                if (b.getWinner() != null) {
+                    value = WIN - 1;
+                } else {
+                    value = -negamax(p.opposite(), b, depth - 1, 1,
+                                     -INFINITY, -alpha);
+                }
+                b.undo();
+                if (value > alpha) {
+                    alpha = value;
+                    bestAtDepth = k;
+                }
+            }
+            if (_stopped) {
+                break;
+            }
+            best = moves[bestAtDepth];
+            System.arraycopy(moves, 0, moves, 1, bestAtDepth);
+            moves[0] = best;
+            if (Math.abs(alpha) > WIN - MAX_DEPTH) {
+                break;
+            }
+            _completedDepth = depth;
+        }
+        return best;
+    }
+
+    /** Returns the value of board B for player P, who is to move, to a
+     *  search depth of DEPTH (0 denotes just evaluating B), PLY moves
+     *  below the position being searched from.  Values of at most
+     *  ALPHA are returned only as upper bounds, and values of at least
+     *  BETA only as lower bounds.  Results are looked up in and
+     *  recorded in _table, and the best move recorded for a position
+     *  is tried first.  Returns 0 at once if the search has exceeded
+     *  its budget.  The contents of B are invariant over this call. */
+    private int negamax(Color p, MutableBoard b, int depth, int ply,
+                        int alpha, int beta) {
+        if (outOfBudget()) {
+            return 0;
         }
-        moves.clear();
-        if (d <= 0) {
+        if (depth == 0) {
             return staticEval(p, b);
-        } else {
-            int maxsofar = Integer.MIN_VALUE + 10;
-            for (int i = 0; i < b.size() * b.size(); i++) {
-                if (b.isLegal(p, i)) {
-                    int value;
-                    b.addSpot(p, i);
-                    if (b.getWinner() != null) {
-                        value = Integer.MAX_VALUE;
-                    } else {
-                        value = -minmax(p.opposite(), b, d - 1,
-                                -maxsofar, null);
-                    }
-                    b.undo();
-                    if (value > cutoff) {
-                        moves.clear();
-                        return value;
-                    }
-                    if (value > maxsofar) {
-                        moves.clear();
-                    }
-                    if (value >= maxsofar) {
-                        moves.add(i);
-                        maxsofar = value;
-                    }
+        }
+        long key = b.key();
+        int first = -1;
+        long entry = _table.probe(key);
+        if (entry != MISS) {
+            first = move(entry);
+            if (depth(entry) >= depth) {
+                int value = fromTable(score(entry), ply);
+                switch (bound(entry)) {
+                case EXACT:
+                    return value;
+                case LOWER:
+                    alpha = Math.max(alpha, value);
+                    break;
+                default:
+                    beta = Math.min(beta, value);
+                    break;
+                }
+                if (alpha >= beta) {
+                    return value;
                 }
             }
-            return maxsofar;
         }
+        int alpha0 = alpha;
+        int maxsofar = -INFINITY;
+        int best = -1;
+        for (int k = -1; k < b.size() * b.size(); k++) {
+            int i = k < 0 ? first : k;
+            if (i < 0 || k >= 0 && i == first || !b.isLegal(p, i)) {
+                continue;
+            }
+            b.addSpot(p, i);
+            int value;
+            if (b.getWinner() != null) {
+                value = WIN - ply - 1;
+            } else {
+                value = -negamax(p.opposite(), b, depth - 1, ply + 1,
+                                 -beta, -alpha);
+            }
+            b.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > maxsofar) {
+                maxsofar = value;
+                best = i;
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        int bound = maxsofar <= alpha0 ? UPPER
+            : maxsofar >= beta ? LOWER : EXACT;
+        _table.store(key, depth, bound, toTable(maxsofar, ply), best);
+        return maxsofar;
+    }
+
+    /** Count a visit to a position, and return true iff the search has
+     *  used up its budget, after which it stays used up.  The search
+     *  to depth 1 is never stopped. */
+    private boolean outOfBudget() {
+        _nodes += 1;
+        if (!_stopped && _completedDepth > 0
+            && (_nodes >= _nodeLimit
+                || (_nodes & CLOCK_INTERVAL) == 0
+                && System.nanoTime() > _deadline)) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
+
+    /** Returns VALUE, found PLY moves below the position searched from,
+     *  as stored in _table: scores of wins and losses count the moves
+     *  from the position stored, not from the position searched. */
+    private static int toTable(int value, int ply) {
+        if (value > WIN - MAX_DEPTH) {
+            return value + ply;
+        } else if (value < MAX_DEPTH - WIN) {
+            return value - ply;
+        }
+        return value;
+    }
+
+    /** Returns the score VALUE from _table as a score PLY moves below
+     *  the position searched from.  The inverse of toTable. */
+    private static int fromTable(int value, int ply) {
+        if (value > WIN - MAX_DEPTH) {
+            return value - ply;
+        } else if (value < MAX_DEPTH - WIN) {
+            return value + ply;
+        }
+        return value;
     }
 
     /** Returns heuristic value of board B for player P.
-     *  Higher is better for P. */
+     *  Higher is better for P.  The value for P's opponent is the
+     *  negation of the value for P, as negamax requires. */
     private int staticEval(Color p, Board b) {
-        int value = 0;
-        value += b.numOfColor(p) - b.numOfColor(p.opposite()) * 10;
-        value += lessNeighbors(p, b);
-        return value;
+        return material(p, b) - material(p.opposite(), b);
+    }
+
+    /** Returns the strength of player P's position on board B,
+     *  without regard to P's opponent. */
+    private int material(Color p, Board b) {
+        return b.numOfColor(p) + lessNeighbors(p, b);
     }
 
     /** Returns the heuristic value of board B for player P
      * for when the board still has empty corners. */
     private int lessNeighbors(Color p, Board b) {
         int currvalue = 0;
-        int[] corners = findCorners(b);
-        for (int x: corners) {
-            if (b.getSquare(x).color() == p) {
+        for (int x: _corners) {
+            if (b.color(x) == p) {
                 currvalue += 10;
             }
         }
-        for (int y: findSides(b)) {
-            if (b.getSquare(y).color() == p) {
+        for (int y: _sides) {
+            if (b.color(y) == p) {
                 currvalue += 5;
             }
         }
@@ -144,7 +258,38 @@ class AI extends Player {
         return sides;
     }
 
+    /** The number of entries in _table is 2**TABLE_BITS. */
+    private static final int TABLE_BITS = 18;
+    /** The deepest search attempted. */
+    private static final int MAX_DEPTH = 64;
+    /** The value of a win on the next move; a win K moves later is
+     *  worth K less.  Static evaluations are far smaller. */
+    private static final int WIN = 1 << 24;
+    /** Greater than the magnitude of any value. */
+    private static final int INFINITY = WIN + 1;
+    /** The clock is read when the number of positions visited has
+     *  none of these bits set. */
+    private static final int CLOCK_INTERVAL = (1 << 10) - 1;
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
     /** The board of this game. */
     private Board _board;
+    /** Results of earlier searches, kept from move to move. */
+    private final TranspositionTable _table =
+        new TranspositionTable(TABLE_BITS);
+    /** The corners and sides of the board being searched. */
+    private int[] _corners, _sides;
+    /** The value of System.nanoTime() at which the current search
+     *  stops. */
+    private long _deadline;
+    /** The number of positions the current search may visit. */
+    private long _nodeLimit;
+    /** The number of positions the current search has visited. */
+    private long _nodes;
+    /** The deepest search completed for the current move. */
+    private int _completedDepth;
+    /** True iff the current search has used up its budget. */
+    private boolean _stopped;
 }
 
@@ -12,10 +12,6 @@ import static jump61.Color.*;
  */
 abstract class Board {
 
-
-    /** The 2D array of the board that has item Squares. */
-    private Square[][] squares;
-
     /** Constructor for abstract class Board. */
     Board() {
     }
@@ -31,16 +27,6 @@ abstract class Board {
         unsupported("copy");
     }
 
-    /** Returns the 2D array SQUARES. */
-    public Square[][] getBoard() {
-        return squares;
-    }
-
-    /** Sets the 2D array board to NEWBOARD. */
-    public void setBoard(Square[][] newboard) {
-        squares = newboard;
-    }
-
     /** Return the number of rows and of columns of THIS. */
     abstract int size();
 
@@ -100,16 +86,6 @@ abstract class Board {
         return (c - 1) + (r - 1) * size();
     }
 
-    /** Return the Square at square #N. */
-    final Square getSquare(int n) {
-        return squares[row(n) - 1][col(n) - 1];
-    }
-
-    /** Return the Square at row R, column C. */
-    final Square getSquare(int r, int c) {
-        return squares[r - 1][c - 1];
-    }
-
     /** Returns true iff it would currently be legal for PLAYER to add a spot
         to square at row R, column C. */
     boolean isLegal(Color player, int r, int c) {
@@ -206,32 +182,35 @@ abstract class Board {
 
     /** Returns the hash of this given board. */
     public String hash() {
-        String code = "";
-        String empty = "x";
-        for (int i = 0; i < size(); i++) {
-            for (int k = 0; k < size(); k++) {
-                if (squares[i][k].color() == WHITE) {
-                    code += empty;
-                } else {
-                    code += squares[i][k].toString();
-                }
+        StringBuilder code = new StringBuilder();
+        for (int n = 0; n < size() * size(); n++) {
+            if (color(n) == WHITE) {
+                code.append('x');
+            } else {
+                code.append(squareString(n));
             }
         }
-        return code;
+        return code.toString();
     }
 
     /** Returns the string representation of a row  I of the board. */
     private String rowString(int i) {
-        String row = "   ";
-        for (int k = 0; k < size(); k++) {
-            row += " ";
-            if (squares[i][k].color() == WHITE) {
-                row += "--";
+        StringBuilder row = new StringBuilder("   ");
+        for (int n = i * size(); n < (i + 1) * size(); n++) {
+            row.append(' ');
+            if (color(n) == WHITE) {
+                row.append("--");
             } else {
-                row += squares[i][k].toString();
+                row.append(squareString(n));
             }
         }
-        return row;
+        return row.toString();
+    }
+
+    /** Returns the spots and color of non-white square #N, as in
+     *  "2r". */
+    private String squareString(int n) {
+        return spots(n) + (color(n) == RED ? "r" : "b");
     }
 
     /** Returns the number of neighbors of the square at row R, column C. */
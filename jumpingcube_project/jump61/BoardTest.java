@@ -2,6 +2,9 @@ package jump61;
 
 import static jump61.Color.*;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -95,6 +98,98 @@ public class BoardTest {
         checkBoard("#5", B, 1, 1, 2, RED, 1, 2, 1,
                 RED, 2, 1, 1, RED, 2, 2, 1, RED);
     }
+    @Test
+    public void testCopy() {
+        Board B = new MutableBoard(4);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 4, 4);
+        B.addSpot(RED, 1, 1);
+        Board C = new MutableBoard(new ConstantBoard(B));
+        checkBoard("copy", C, 1, 1, 2, RED, 4, 4, 1, BLUE);
+        assertEquals("wrong move count", B.numMoves(), C.numMoves());
+        C.addSpot(BLUE, 4, 4);
+        checkBoard("original", B, 1, 1, 2, RED, 4, 4, 1, BLUE);
+        B.set(2, 3, 2, BLUE);
+        C.copy(B);
+        checkBoard("recopy", C, 1, 1, 2, RED, 2, 3, 2, BLUE,
+                   4, 4, 1, BLUE);
+        assertEquals("wrong count", 2, C.numOfColor(BLUE));
+        assertEquals("wrong count", 13, C.numOfColor(WHITE));
+    }
+
+    @Test
+    public void testUndo() {
+        Board B = new MutableBoard(4);
+        Random random = new Random(61);
+        ArrayList<String> dumps = new ArrayList<String>();
+        while (B.getWinner() == null) {
+            dumps.add(B.toString());
+            int n;
+            do {
+                n = random.nextInt(B.size() * B.size());
+            } while (!B.isLegal(B.whoseMove(), n));
+            B.addSpot(B.whoseMove(), n);
+        }
+        for (int k = dumps.size() - 1; k >= 0; k -= 1) {
+            B.undo();
+            assertEquals("bad undo of move " + (k + 1), dumps.get(k),
+                         B.toString());
+            assertEquals("bad move count", k + 1, B.numMoves());
+        }
+        assertEquals("wrong count", 16, B.numOfColor(WHITE));
+    }
+
+    @Test
+    public void testKey() {
+        MutableBoard B = new MutableBoard(4);
+        MutableBoard C = new MutableBoard(4);
+        long empty = B.key();
+        B.addSpot(RED, 1, 1);
+        assertTrue("key unchanged", B.key() != empty);
+        B.addSpot(BLUE, 4, 4);
+        B.addSpot(RED, 2, 2);
+        C.addSpot(RED, 2, 2);
+        C.addSpot(BLUE, 4, 4);
+        C.addSpot(RED, 1, 1);
+        assertEquals("transposed moves", B.key(), C.key());
+        C.setMoves(C.numMoves() + 1);
+        assertTrue("side to move ignored", B.key() != C.key());
+        B.undo();
+        B.undo();
+        B.undo();
+        assertEquals("bad undo", empty, B.key());
+        B.set(3, 3, 1, BLUE);
+        assertEquals("copy", B.key(), new MutableBoard(B).key());
+        MutableBoard D = new MutableBoard(6);
+        assertTrue("sizes ignored", new MutableBoard(4).key() != D.key());
+        D.set(2, 5, 1, BLUE);
+        assertTrue("sizes ignored", B.key() != D.key());
+    }
+
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable T = new TranspositionTable(4);
+        long key = 0x123456789abcdefL;
+        assertEquals("empty", TranspositionTable.MISS, T.probe(key));
+        T.store(key, 3, TranspositionTable.LOWER, -42, 7);
+        long data = T.probe(key);
+        assertEquals("depth", 3, TranspositionTable.depth(data));
+        assertEquals("bound", TranspositionTable.LOWER,
+                     TranspositionTable.bound(data));
+        assertEquals("score", -42, TranspositionTable.score(data));
+        assertEquals("move", 7, TranspositionTable.move(data));
+        T.store(key, 2, TranspositionTable.EXACT, 5, -1);
+        assertEquals("shallower replaced deeper", 3,
+                     TranspositionTable.depth(T.probe(key)));
+        T.store(key + (1L << 40), 1, TranspositionTable.EXACT,
+                Integer.MAX_VALUE, -1);
+        assertEquals("collision kept", TranspositionTable.MISS, T.probe(key));
+        assertEquals("score", Integer.MAX_VALUE,
+                     TranspositionTable.score(T.probe(key + (1L << 40))));
+        assertEquals("move", -1,
+                     TranspositionTable.move(T.probe(key + (1L << 40))));
+    }
+
     private void checkBoard(String msg, Board B, Object... contents) {
         for (int k = 0; k < contents.length; k += 4) {
             String M = String.format("%s at %d %d", msg, contents[k],
@@ -72,6 +72,11 @@ class ConstantBoard extends Board {
         return _board.hashCode();
     }
 
+    /** Returns the Board of which I am a view. */
+    Board underlying() {
+        return _board;
+    }
+
     /** Board to which all operations delegated. */
     private Board _board;
 
@@ -18,4 +18,11 @@ class Defaults {
     /** Default number of Spots for a Square. */
     static final int DEF_SPOTS = 0;
 
+    /** Default time an AI may take to choose a move, in milliseconds. */
+    static final long TIME_BUDGET = 500;
+
+    /** Default number of positions an AI may examine to choose a move
+     *  (0 for no limit). */
+    static final long NODE_BUDGET = 0;
+
 }
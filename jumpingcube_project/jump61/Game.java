@@ -21,7 +21,7 @@ class Game {
     /** The list of possible commands. */
     private final String[] commands = {"clear", "start", "quit",
         "auto", "manual", "size", "move", "set", "dump", "seed",
-        "help"};
+        "time", "nodes", "help"};
 
     /** A new Game that takes command/move input from INPUT, prints
      *  normal output on OUTPUT, prints prompts for input on PROMPTS,
@@ -86,6 +86,18 @@ class Game {
         }
     }
 
+    /** Returns the time an AI may take to choose a move, in
+     *  milliseconds. */
+    long getTimeBudget() {
+        return _timeBudget;
+    }
+
+    /** Returns the number of positions an AI may examine to choose a
+     *  move, or 0 if there is no limit. */
+    long getNodeBudget() {
+        return _nodeBudget;
+    }
+
     /** Get a move from my input and place its row and column in
      *  MOVE.  Returns true if this is successful, false if game stops
      *  or ends first. */
@@ -210,13 +222,30 @@ class Game {
         _random.setSeed(seed);
     }
 
+    /** Allow AIs MILLIS milliseconds to choose each move. */
+    private void setTimeBudget(long millis) {
+        if (millis <= 0) {
+            throw error("cannot have time limit %d", millis);
+        }
+        _timeBudget = millis;
+    }
+
+    /** Allow AIs to examine NODES positions to choose each move, or
+     *  any number if NODES is 0. */
+    private void setNodeBudget(long nodes) {
+        if (nodes < 0) {
+            throw error("cannot have node limit %d", nodes);
+        }
+        _nodeBudget = nodes;
+    }
+
     /** Place SPOTS spots on square R:C and color the square red or
      *  blue depending on whether COLOR is "r" or "b".  If SPOTS is
      *  0, clears the square, ignoring COLOR.  SPOTS must be less than
      *  the number of neighbors of square R, C. */
     private void setSpots(int r, int c, int spots, String color) {
-        if (spots == 0) {
-            _board.getBoard()[r][c].clear();
+        if (spots == 0 && _board.exists(r, c)) {
+            _board.set(r, c, 0, WHITE);
         } else if (spots > _board.neighbors(r, c) || spots < 0
                 || !_board.exists(r, c)) {
             throw error("invalid request to put %d spots onto square %d %d",
@@ -339,6 +368,12 @@ class Game {
         case "seed":
             setSeed(_inp.nextLong());
             break;
+        case "time":
+            setTimeBudget(_inp.nextLong());
+            break;
+        case "nodes":
+            setNodeBudget(_inp.nextLong());
+            break;
         case "help":
             help();
             break;
@@ -392,6 +427,12 @@ class Game {
     /** A pseudo-random number generator used by players as needed. */
     private final Random _random = new Random();
 
+    /** Milliseconds an AI may take to choose a move. */
+    private long _timeBudget = Defaults.TIME_BUDGET;
+
+    /** Positions an AI may examine to choose a move; 0 for no limit. */
+    private long _nodeBudget = Defaults.NODE_BUDGET;
+
     /** True iff a game is currently in progress. */
     private boolean _playing;
 
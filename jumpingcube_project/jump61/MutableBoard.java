@@ -1,11 +1,17 @@
 package jump61;
 
 import java.util.ArrayDeque;
-import java.util.Stack;
+import java.util.Arrays;
 
 import static jump61.Color.*;
 
-/** A Jump61 board state.
+/** A Jump61 board state.  The squares are packed into a single byte
+ *  array, one byte per square holding its spots above its color, so
+ *  that reading a square touches no other object and copying a board
+ *  is one System.arraycopy.  Undo information is a journal of the
+ *  previous contents of each square as it changes, so undoing a move
+ *  costs time proportional to the changes it made.  A 64-bit Zobrist
+ *  key of the position is kept current as squares change.
  *  @author Allen Yu
  */
 class MutableBoard extends Board {
@@ -13,10 +19,8 @@ class MutableBoard extends Board {
     /** An N x N board in initial configuration. */
     MutableBoard(int N) {
         super();
-        _N = N;
         jumping = 0;
-        setBoard(new Square[size()][size()]);
-        clear(size());
+        clear(N);
     }
 
     /** A board whose initial contents are copied from BOARD0. Clears the
@@ -29,30 +33,53 @@ class MutableBoard extends Board {
 
     @Override
     void clear(int N) {
-        for (int i = 0; i < N; i++) {
-            for (int j = 0; j < N; j++) {
-                getBoard()[i][j] = new Square();
-            }
-        }
-        _N = N;
+        resize(N);
+        Arrays.fill(_cells, (byte) 0);
+        Arrays.fill(_counts, 0);
+        _counts[WHITE.ordinal()] = N * N;
+        _squaresKey = 0;
         _moves = 1;
-        stack.clear();
-        stack.push(hash());
+        clearHistory();
     }
 
     @Override
     void copy(Board board2) {
-        setBoard(new Square[board2.size()][board2.size()]);
-        for (int i = 0; i < board2.size(); i++) {
-            for (int k = 0; k < board2.size(); k++) {
-                getBoard()[i][k] = new Square();
-                getBoard()[i][k].setcolor(board2.color(i + 1, k + 1));
-                getBoard()[i][k].setSpots(board2.spots(i + 1, k + 1));
+        if (board2 instanceof ConstantBoard) {
+            board2 = ((ConstantBoard) board2).underlying();
+        }
+        int N = board2.size();
+        resize(N);
+        if (board2 instanceof MutableBoard) {
+            MutableBoard other = (MutableBoard) board2;
+            System.arraycopy(other._cells, 0, _cells, 0, N * N);
+            System.arraycopy(other._counts, 0, _counts, 0, _counts.length);
+            _squaresKey = other._squaresKey;
+        } else {
+            Arrays.fill(_counts, 0);
+            _squaresKey = 0;
+            for (int n = 0; n < N * N; n++) {
+                Color color = board2.color(n);
+                _cells[n] = cell(board2.spots(n), color);
+                _counts[color.ordinal()] += 1;
+                _squaresKey ^= squareKey(n, _cells[n]);
             }
         }
-        _N = board2.size();
         _moves = board2.numMoves();
-        stack.push(hash());
+        clearHistory();
+    }
+
+    /** Make me an N x N board, reusing my arrays if they already have
+     *  that size.  The contents of the squares are unspecified. */
+    private void resize(int N) {
+        if (_cells == null || _N != N) {
+            _N = N;
+            _sizeKey = mix((long) N << Integer.SIZE);
+            _cells = new byte[N * N];
+            _neighbors = new byte[N * N];
+            for (int n = 0; n < N * N; n++) {
+                _neighbors[n] = (byte) super.neighbors(n);
+            }
+        }
     }
 
     @Override
@@ -62,22 +89,22 @@ class MutableBoard extends Board {
 
     @Override
     int spots(int r, int c) {
-        return getSquare(r, c).spots();
+        return spots(sqNum(r, c));
     }
 
     @Override
     int spots(int n) {
-        return getSquare(n).spots();
+        return _cells[n] >> COLOR_BITS;
     }
 
     @Override
     Color color(int r, int c) {
-        return getSquare(r, c).color();
+        return color(sqNum(r, c));
     }
 
     @Override
     Color color(int n) {
-        return getSquare(n).color();
+        return COLORS[_cells[n] & COLOR_MASK];
     }
 
     @Override
@@ -87,100 +114,138 @@ class MutableBoard extends Board {
 
     @Override
     int numOfColor(Color color) {
-        int count = 0;
-        for (int i = 0; i < size(); i++) {
-            for (int j = 0; j < size(); j++) {
-                if (getBoard()[i][j].color().equals(color)) {
-                    count += 1;
-                }
-            }
-        }
-        return count;
+        return _counts[color.ordinal()];
+    }
+
+    /** Returns the Zobrist key of this position: a 64-bit hash of my
+     *  size, the contents of every square and the player to move, such that
+     *  equal positions have equal keys and unequal ones almost never
+     *  do. */
+    long key() {
+        long key = _squaresKey ^ _sizeKey;
+        return whoseMove() == RED ? key : key ^ BLUE_KEY;
+    }
+
+    @Override
+    int neighbors(int n) {
+        return _neighbors[n];
     }
 
     @Override
     void addSpot(Color player, int r, int c) {
-        getSquare(r, c).addspot();
-        getSquare(r, c).setcolor(player);
-        if (getSquare(r, c).spots() > neighbors(r, c)) {
-            jumping += 1;
-            jump(sqNum(r, c));
-            jumping -= 1;
-        }
-        if (jumping == 0) {
-            addStack();
-            _moves += 1;
-        }
+        addSpot(player, sqNum(r, c));
     }
 
     @Override
     void addSpot(Color player, int n) {
-        getSquare(n).addspot();
-        getSquare(n).setcolor(player);
-        if (getSquare(n).spots() > neighbors(n)) {
+        if (jumping == 0) {
+            startMove();
+        }
+        put(n, spots(n) + 1, player);
+        if (spots(n) > neighbors(n)) {
             jumping += 1;
             jump(n);
             jumping -= 1;
         }
         if (jumping == 0) {
-            addStack();
             _moves += 1;
         }
     }
 
     @Override
     void set(int r, int c, int num, Color player) {
-        getBoard()[r - 1][c - 1] = new Square(num, player);
-        stack.clear();
+        set(sqNum(r, c), num, player);
     }
 
     @Override
     void set(int n, int num, Color player) {
-        if (getSquare(n) != null) {
-            getSquare(n).setcolor(player);
-            getSquare(n).setSpots(num);
-        }
-        getBoard()[row(n) - 1][col(n) - 1] = new Square(num, player);
-        stack.clear();
+        put(n, num, num > 0 ? player : WHITE);
+        clearHistory();
     }
 
     @Override
     void setMoves(int num) {
         assert num > 0;
         _moves = num;
-        stack.clear();
+        clearHistory();
     }
 
     @Override
     void undo() {
-        stack.pop();
-        String curr = stack.peek();
-        char[] items = curr.toCharArray();
-        int iter = 0;
-        for (int i = 0; i < size(); i++) {
-            for (int k = 0; k < size(); k++) {
-                if (items[iter] == 'x') {
-                    getBoard()[i][k] = new Square();
-                } else {
-                    int spots = Integer.parseInt(String.valueOf(items[iter]));
-                    String str = String.valueOf(items[iter + 1]);
-                    Color color;
-                    if (str.equals("r")) {
-                        color = RED;
-                    } else {
-                        color = BLUE;
-                    }
-                    getBoard()[i][k] = new Square(spots, color);
-                    iter += 1;
-                }
-                iter += 1;
-            }
+        if (_numMoveStarts == 0) {
+            throw new IllegalStateException("no move to undo");
+        }
+        _numMoveStarts -= 1;
+        int start = _moveStarts[_numMoveStarts];
+        while (_journalSize > start) {
+            _journalSize -= 1;
+            int entry = _journal[_journalSize];
+            int n = entry >>> Byte.SIZE;
+            _counts[_cells[n] & COLOR_MASK] -= 1;
+            _squaresKey ^= squareKey(n, _cells[n]) ^ squareKey(n, entry);
+            _cells[n] = (byte) entry;
+            _counts[_cells[n] & COLOR_MASK] += 1;
+        }
+        _moves -= 1;
+    }
+
+    /** Discard all undo information. */
+    private void clearHistory() {
+        _journalSize = 0;
+        _numMoveStarts = 0;
+    }
+
+    /** Record the start of a move, to which undo returns. */
+    private void startMove() {
+        if (_numMoveStarts == _moveStarts.length) {
+            _moveStarts = Arrays.copyOf(_moveStarts, 2 * _numMoveStarts);
+        }
+        _moveStarts[_numMoveStarts] = _journalSize;
+        _numMoveStarts += 1;
+    }
+
+    /** Set square #N to NUM spots of color PLAYER, keeping the counts of
+     *  each color current and journaling its previous contents. */
+    private void put(int n, int num, Color player) {
+        if (_journalSize == _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journalSize);
+        }
+        _journal[_journalSize] = n << Byte.SIZE | (_cells[n] & BYTE_MASK);
+        _journalSize += 1;
+        _counts[_cells[n] & COLOR_MASK] -= 1;
+        _counts[player.ordinal()] += 1;
+        byte cell = cell(num, player);
+        _squaresKey ^= squareKey(n, _cells[n]) ^ squareKey(n, cell);
+        _cells[n] = cell;
+    }
+
+    /** Returns the packed representation of a square with NUM spots of
+     *  color PLAYER. */
+    private static byte cell(int num, Color player) {
+        return (byte) (num << COLOR_BITS | player.ordinal());
+    }
+
+    /** Returns the Zobrist key of square #N of this board when its
+     *  packed contents are CELL (only the low byte of which is used):
+     *  0 for an empty square, and otherwise a fixed pseudo-random value
+     *  that also depends on my size, so that positions on boards of
+     *  different sizes have unrelated keys. */
+    private long squareKey(int n, int cell) {
+        cell &= BYTE_MASK;
+        if (cell == 0) {
+            return 0;
         }
+        return mix((long) _N << Integer.SIZE | n << Byte.SIZE | cell);
     }
 
-    /** Adds another stack onto the undostack. */
-    private void addStack() {
-        stack.push(hash());
+    /** Returns a pseudo-random function of X, computed with the
+     *  SplitMix64 mixing function rather than looked up in a table, so
+     *  that boards of every size can have their own keys. */
+    private static long mix(long x) {
+        long z = x * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     /** Do all jumping on this board, assuming that initially, S is the only
@@ -193,9 +258,8 @@ class MutableBoard extends Board {
                 return;
             }
             int nxt = jumps.pop();
-            if (getSquare(nxt).spots() > neighbors(nxt)) {
-                getSquare(nxt).setSpots(getSquare(nxt).spots()
-                        - neighbors(nxt));
+            if (spots(nxt) > neighbors(nxt)) {
+                put(nxt, spots(nxt) - neighbors(nxt), color(nxt));
                 if (exists(nxt - size())) {
                     addSpot(whoseMove(), nxt - size());
                     jumps.push(nxt - size());
@@ -216,15 +280,49 @@ class MutableBoard extends Board {
         }
     }
 
+    /** The colors, indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+    /** The number of low-order bits of a square holding its color. */
+    private static final int COLOR_BITS = 2;
+    /** Mask selecting the color of a square. */
+    private static final int COLOR_MASK = (1 << COLOR_BITS) - 1;
+    /** Mask selecting the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** The SplitMix64 increment, spreading consecutive inputs of
+     *  squareKey apart. */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    /** The part of a Zobrist key denoting that blue is to move. */
+    private static final long BLUE_KEY = mix(BYTE_MASK);
+    /** Initial sizes of the undo journal and of the list of moves. */
+    private static final int INITIAL_HISTORY = 64;
+
     /** Total combined number of moves by both sides. */
     protected int _moves;
     /** Convenience variable: size of board (squares along one edge). */
     private int _N;
+    /** The squares, by square number: spots << COLOR_BITS | color. */
+    private byte[] _cells;
+    /** The number of neighbors of each square. */
+    private byte[] _neighbors;
+    /** The part of my Zobrist key denoting my size. */
+    private long _sizeKey;
+    /** The Zobrist key of my squares, without the player to move. */
+    private long _squaresKey;
+    /** The number of squares of each color, indexed by ordinal. */
+    private final int[] _counts = new int[COLORS.length];
     /** keeps track of how many recursive jumps I make. */
     private int jumping;
-    /** An UndoStack that keeps track of each move and stores them as a
-     *  string to represent the board. */
-    private Stack<String> stack = new Stack<String>();
+    /** The undo journal: for each change to a square since the history
+     *  was last cleared, its square number << Byte.SIZE | its previous
+     *  contents.  Only the first _journalSize entries are in use. */
+    private int[] _journal = new int[INITIAL_HISTORY];
+    /** The number of entries in _journal. */
+    private int _journalSize;
+    /** The size of _journal at the start of each undoable move.  Only
+     *  the first _numMoveStarts entries are in use. */
+    private int[] _moveStarts = new int[INITIAL_HISTORY];
+    /** The number of undoable moves. */
+    private int _numMoveStarts;
     /** A queue to keep track of what squares that still need to be checked. */
     private ArrayDeque<Integer> jumps = new ArrayDeque<Integer>();
 }
@@ -0,0 +1,103 @@
+package jump61;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by the Zobrist keys
+ *  of positions.  Each entry records the depth to which a position was
+ *  searched, its score, whether that score is exact or only a bound,
+ *  and the best move found.  Entries are two longs, the key xor the
+ *  data and the data itself, written without locking; a reader that
+ *  sees halves of two different writes finds that the key does not
+ *  match, and treats the entry as missing.  Colliding positions
+ *  replace each other, except that a deeper result for the same
+ *  position is kept in preference to a shallower one.
+ *  @author Allen Yu
+ */
+class TranspositionTable {
+
+    /** Bound types.  EXACT scores are the position's value; LOWER
+     *  scores are at most its value, and UPPER scores at least. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** Result of probe when there is no entry for a position. */
+    static final long MISS = 0;
+
+    /** A table of 2**BITS entries. */
+    TranspositionTable(int bits) {
+        _mask = (1 << bits) - 1;
+        _slots = new long[2 << bits];
+    }
+
+    /** Returns the data stored for the position with Zobrist key KEY,
+     *  to be decoded with depth, bound, score and move, or MISS. */
+    long probe(long key) {
+        int i = index(key);
+        long data = _slots[i + 1];
+        if ((_slots[i] ^ data) != key) {
+            return MISS;
+        }
+        return data;
+    }
+
+    /** Record that the position with Zobrist key KEY, searched to
+     *  DEPTH, has score SCORE of bound type BOUND and best move MOVE
+     *  (-1 if none). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = index(key);
+        long old = _slots[i + 1];
+        if ((_slots[i] ^ old) == key && depth(old) > depth) {
+            return;
+        }
+        long data = (long) score << SCORE_SHIFT
+            | (long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (move + 1);
+        _slots[i] = key ^ data;
+        _slots[i + 1] = data;
+    }
+
+    /** Discard all entries. */
+    void clear() {
+        Arrays.fill(_slots, 0);
+    }
+
+    /** Returns the depth recorded in DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /** Returns the bound type recorded in DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Returns the score recorded in DATA. */
+    static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    /** Returns the best move recorded in DATA, or -1 if none. */
+    static int move(long data) {
+        return (int) (data & MOVE_MASK) - 1;
+    }
+
+    /** Returns the index in _slots of the entry for KEY. */
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & _mask) << 1;
+    }
+
+    /** Layout of entry data: the move plus 1 in the low MOVE_BITS bits,
+     *  then the bound type, then the depth, then the score in the high
+     *  32 bits. */
+    private static final int MOVE_BITS = 20, BOUND_SHIFT = MOVE_BITS,
+        DEPTH_SHIFT = BOUND_SHIFT + 2, SCORE_SHIFT = 32;
+    /** Masks for the fields of entry data, after shifting. */
+    private static final int MOVE_MASK = (1 << MOVE_BITS) - 1,
+        BOUND_MASK = 3, MAX_DEPTH = (1 << (SCORE_SHIFT - DEPTH_SHIFT)) - 1;
+
+    /** Selects the entry of a key. */
+    private final int _mask;
+    /** Entry I is the key xor the data at 2 * I, and the data at
+     *  2 * I + 1. */
+    private final long[] _slots;
+}